@@ -0,0 +1,221 @@
+package searchengine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+/*
+ * This class parses a boolean query over description words and plans it into a tree of
+ * DocIterators.
+ *
+ * The query language has AND, OR and NOT (upper case) and parentheses; NOT binds
+ * tighter than AND, which binds tighter than OR, and words next to each other are
+ * joined by AND. "a NOT b" is a AND NOT b. For example:
+ * 		young AND (man OR woman) NOT war
+ *
+ * The plan flattens nested conjunctions and orders each one from the rarest iterator
+ * to the most frequent, using the words' numbers of movies, so the rarest word leads
+ * and the others are only advanced to its movies. A NOT inside a conjunction is not an
+ * iterator of its own: its operand becomes an exclusion that is advanced to each
+ * candidate to check it. Noise words and other words that are never indexed match
+ * every movie, so they drop out of conjunctions; a word that is not in the table
+ * matches none.
+ */
+public class BooleanQuery {
+
+	private static final int TERM = 0;
+	private static final int AND  = 1;
+	private static final int OR   = 2;
+	private static final int NOT  = 3;
+
+	private static final Comparator<DocIterator> BY_COST = new Comparator<DocIterator>() {
+		public int compare ( DocIterator a, DocIterator b ) {
+			return Long.compare(a.cost(), b.cost());
+		}
+	};
+
+	private final Node root;       // the parsed query
+	private String[] tokens;       // the query's tokens, while parsing
+	private int pos;               // next token, while parsing
+
+	/*
+	 * Parses @query.
+	 * @throws IllegalArgumentException if @query is empty or malformed
+	 */
+	public BooleanQuery ( String query ) {
+		String spaced = query.replace("(", " ( ").replace(")", " ) ").trim();
+		if ( spaced.isEmpty() ) {
+			throw new IllegalArgumentException("empty query");
+		}
+		this.tokens = spaced.split("\\s+");
+		this.pos    = 0;
+		this.root   = parseOr();
+		if ( pos < tokens.length ) {
+			throw new IllegalArgumentException("unexpected " + tokens[pos] + " in query: " + query);
+		}
+		this.tokens = null;
+	}
+
+	/*
+	 * Builds the iterator tree of the query over @engine's postings.
+	 * @return the movies matching the query
+	 */
+	public DocIterator plan ( RUMDbSearchEngine engine ) {
+		DocIterator it = plan(root, engine);
+		return it != null ? it : DocIterator.all(engine.getDocumentTable().size());
+	}
+
+	/*
+	 * @return the iterator of @node, or null if it matches every movie
+	 */
+	private DocIterator plan ( Node node, RUMDbSearchEngine engine ) {
+		switch ( node.type ) {
+		case TERM: {
+			String word = engine.isWord(node.term);
+			if ( word == null ) {
+				return null;
+			}
+			WordOccurrence occ = engine.getWordOccurrence(word);
+			return occ != null ? occ.cursor() : DocIterator.empty();
+		}
+		case OR: {
+			ArrayList<DocIterator> any = new ArrayList<DocIterator>();
+			for ( Node child : node.children ) {
+				DocIterator it = plan(child, engine);
+				if ( it == null ) {
+					return null;
+				}
+				if ( it.cost() > 0 ) {
+					any.add(it);
+				}
+			}
+			if ( any.isEmpty() ) {
+				return DocIterator.empty();
+			}
+			return any.size() == 1 ? any.get(0) : DocIterator.or(any);
+		}
+		default: {
+			// a conjunction, or a NOT outside of one
+			ArrayList<Node> terms = new ArrayList<Node>();
+			flatten(node, terms);
+			ArrayList<DocIterator> required = new ArrayList<DocIterator>();
+			ArrayList<DocIterator> excluded = new ArrayList<DocIterator>();
+			for ( Node child : terms ) {
+				if ( child.type == NOT ) {
+					DocIterator it = plan(child.children.get(0), engine);
+					if ( it == null ) {
+						return DocIterator.empty();
+					}
+					if ( it.cost() > 0 ) {
+						excluded.add(it);
+					}
+				} else {
+					DocIterator it = plan(child, engine);
+					if ( it != null ) {
+						if ( it.cost() == 0 ) {
+							return it;
+						}
+						required.add(it);
+					}
+				}
+			}
+			if ( required.isEmpty() ) {
+				if ( excluded.isEmpty() ) {
+					return null;
+				}
+				required.add(DocIterator.all(engine.getDocumentTable().size()));
+			}
+			if ( required.size() == 1 && excluded.isEmpty() ) {
+				return required.get(0);
+			}
+			// rarest first; the most frequent exclusions are the likeliest to reject
+			Collections.sort(required, BY_COST);
+			Collections.sort(excluded, Collections.reverseOrder(BY_COST));
+			return DocIterator.and(required, excluded);
+		}
+		}
+	}
+
+	/*
+	 * Adds the operands of the conjunction @node, and of the conjunctions in it, to @out.
+	 */
+	private static void flatten ( Node node, ArrayList<Node> out ) {
+		if ( node.type == AND ) {
+			for ( Node child : node.children ) {
+				flatten(child, out);
+			}
+		} else {
+			out.add(node);
+		}
+	}
+
+	private Node parseOr () {
+		Node first = parseAnd();
+		if ( !peek("OR") ) {
+			return first;
+		}
+		Node or = new Node(OR, null);
+		or.children.add(first);
+		while ( peek("OR") ) {
+			pos++;
+			or.children.add(parseAnd());
+		}
+		return or;
+	}
+
+	private Node parseAnd () {
+		Node first = parseUnary();
+		if ( pos == tokens.length || peek("OR") || peek(")") ) {
+			return first;
+		}
+		Node and = new Node(AND, null);
+		and.children.add(first);
+		while ( pos < tokens.length && !peek("OR") && !peek(")") ) {
+			if ( peek("AND") ) {
+				pos++;
+			}
+			and.children.add(parseUnary());
+		}
+		return and;
+	}
+
+	private Node parseUnary () {
+		if ( pos == tokens.length ) {
+			throw new IllegalArgumentException("query ends after an operator");
+		}
+		String token = tokens[pos++];
+		if ( token.equals("NOT") ) {
+			Node not = new Node(NOT, null);
+			not.children.add(parseUnary());
+			return not;
+		}
+		if ( token.equals("(") ) {
+			Node inner = parseOr();
+			if ( !peek(")") ) {
+				throw new IllegalArgumentException("missing )");
+			}
+			pos++;
+			return inner;
+		}
+		if ( token.equals(")") || token.equals("AND") || token.equals("OR") ) {
+			throw new IllegalArgumentException("unexpected " + token);
+		}
+		return new Node(TERM, token);
+	}
+
+	private boolean peek ( String token ) {
+		return pos < tokens.length && tokens[pos].equals(token);
+	}
+
+	private static class Node {
+		final int    type;
+		final String term;                  // the word of a TERM
+		final ArrayList<Node> children;     // the operands of AND, OR and NOT
+
+		Node ( int type, String term ) {
+			this.type     = type;
+			this.term     = term;
+			this.children = new ArrayList<Node>();
+		}
+	}
+}
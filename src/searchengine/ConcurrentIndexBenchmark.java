@@ -0,0 +1,98 @@
+package searchengine;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+ * Measures how ConcurrentRUMDbSearchEngine's loading scales with the number of threads.
+ *
+ * The input file is parsed once and repeated @copies times (with distinct titles) so
+ * that there is enough work to time. For 1, 2, 4, ... up to @maxThreads threads the
+ * movies are loaded into a fresh engine while one extra thread keeps calling
+ * getWordOccurrence(). Every configuration is loaded once to warm up before it is timed.
+ *
+ * Usage: java searchengine.ConcurrentIndexBenchmark [inputFile] [maxThreads] [copies]
+ */
+public class ConcurrentIndexBenchmark {
+
+	public static void main ( String[] args ) {
+
+		String inputFile  = args.length > 0 ? args[0] : "data.txt";
+		int    maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		int    copies     = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+		String noiseWordsFile = "noisewords.txt";
+
+		ArrayList<ArrayList<String>> movies = new ArrayList<ArrayList<String>>();
+		ArrayList<ArrayList<String>> parsed = new RUMDbSearchEngine(20, 0.75, noiseWordsFile).readInputFile(inputFile);
+		long postings = 0;
+		for ( int c = 0; c < copies; c++ ) {
+			for ( ArrayList<String> movie : parsed ) {
+				ArrayList<String> copy = new ArrayList<String>(movie);
+				copy.set(0, movie.get(0) + " #" + c);
+				movies.add(copy);
+				postings += movie.size() - 1;
+			}
+		}
+		String[] probes = { "young", "man", "story", "love", "war", "woman" };
+
+		StdOut.printf("%d movies, %d description words%n", movies.size(), postings);
+		StdOut.printf("%8s %12s %16s %10s %14s%n", "threads", "load ms", "words/s", "speedup", "lookups/s");
+
+		double baseline = 0;
+		for ( int threads = 1; threads <= maxThreads; threads = nextThreadCount(threads, maxThreads) ) {
+			load(movies, threads, noiseWordsFile, probes);
+			long[] run = load(movies, threads, noiseWordsFile, probes);
+
+			double seconds = run[0] / 1e9;
+			if ( threads == 1 ) {
+				baseline = seconds;
+			}
+			StdOut.printf("%8d %12.1f %16.0f %10.2f %14.0f%n",
+				threads, run[0] / 1e6, postings / seconds, baseline / seconds, run[1] / seconds);
+		}
+	}
+
+	/*
+	 * Loads @movies into a new engine with @threads threads while a reader thread looks
+	 * up @probes.
+	 * @return { elapsed nanoseconds, number of lookups done by the reader }
+	 */
+	private static long[] load ( ArrayList<ArrayList<String>> movies, int threads, String noiseWordsFile, String[] probes ) {
+		final ConcurrentRUMDbSearchEngine engine = new ConcurrentRUMDbSearchEngine(20, 0.75, noiseWordsFile, threads);
+		final long[] lookups = new long[1];
+		final AtomicBoolean done = new AtomicBoolean(false);
+
+		Thread reader = new Thread(new Runnable() {
+			public void run () {
+				long n = 0;
+				while ( !done.get() ) {
+					for ( String probe : probes ) {
+						engine.getWordOccurrence(probe);
+						n++;
+					}
+				}
+				lookups[0] = n;
+			}
+		});
+		reader.start();
+
+		long start = System.nanoTime();
+		engine.insertMovies(movies);
+		long elapsed = System.nanoTime() - start;
+
+		done.set(true);
+		try {
+			reader.join();
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		}
+		return new long[] { elapsed, lookups[0] };
+	}
+
+	private static int nextThreadCount ( int threads, int maxThreads ) {
+		if ( threads == maxThreads ) {
+			return maxThreads + 1;
+		}
+		return Math.min(threads * 2, maxThreads);
+	}
+}
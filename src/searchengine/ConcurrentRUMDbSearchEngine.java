@@ -0,0 +1,411 @@
+package searchengine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+
+/*
+ * A RUMDbSearchEngine that many threads can index into at the same time.
+ *
+ * The words are split over a power-of-two number of segments by the high bits of their
+ * hash code, and every segment is an independent TermDictionary guarded by its own
+ * StampedLock:
+ *
+ * 		- getWordOccurrence() probes the segment under an optimistic read, so readers
+ * 		  never write to shared memory, and only fall back to the read lock when a writer
+ * 		  changed the segment during the probe.
+ * 		- insertWordLocation() first looks the word up the same way; the segment's write
+ * 		  lock is only taken to add a new word. Locations are appended while holding the
+ * 		  WordOccurrence's monitor.
+ * 		- a segment grows on its own when its load factor crosses the threshold. The
+ * 		  resize is incremental (see TermDictionary), and every writer that enters the
+ * 		  segment moves its share of slots into the new table, so the transfer is shared
+ * 		  by the threads that use the segment while the other segments stay untouched.
+ *
+ * insertMoviesIntoHashTable() indexes in two parallel phases. First every thread
+ * resolves the words of a range of movies to their WordOccurrence objects; then every
+ * thread appends the locations of the words it owns, walking the movies in input order,
+ * so each word's locations keep the same order as in RUMDbSearchEngine.
+ *
+ * Searches read the locations without locking and must not run while words are being
+ * inserted. After freeze() the segments are dropped and lookups go through the frozen
+ * table of RUMDbSearchEngine.
+ */
+public class ConcurrentRUMDbSearchEngine extends RUMDbSearchEngine {
+
+	private Segment[] segments;           // the hash table split by hash code, null once frozen
+	private final int    segmentShift;    // 32 - log2(segments.length)
+	private final double threshold;       // load factor threshold of every segment
+	private final int    threads;         // threads used by insertMoviesIntoHashTable
+	private final AtomicInteger wordCount;   // the number of unique words in the table
+	private final AtomicInteger resizeCount; // the number of segment resizes
+
+	/*
+	 * Constructor initilizes the segmented hash table.
+	 *
+	 *  @param hashSize is the total initial size of the hash table
+	 * 	@param threshold for every segment's load factor, see RUMDbSearchEngine
+	 *  @param noiseWordsFile contains words that will not be inserted into the hash table.
+	 *  @param threads the number of threads used to load movies
+	 *  @throws IllegalArgumentException if @threshold is not in (0, MAX_LOAD_FACTOR]
+	 */
+	public ConcurrentRUMDbSearchEngine (int hashSize, double threshold, String noiseWordsFile, int threads) {
+		super(threshold, noiseWordsFile);
+
+		int count = 16;
+		while ( count < threads * 4 ) {
+			count <<= 1;
+		}
+		this.segments = new Segment[count];
+		for ( int i = 0; i < count; i++ ) {
+			segments[i] = new Segment(Math.max(2, hashSize / count));
+		}
+		this.segmentShift = 32 - Integer.numberOfTrailingZeros(count);
+		this.threshold    = threshold;
+		this.threads      = Math.max(1, threads);
+		this.wordCount    = new AtomicInteger();
+		this.resizeCount  = new AtomicInteger();
+	}
+
+	/*
+	 * Returns the hash table load factor
+	 * @return the load factor
+	 */
+	public double getLoadFactor () {
+		if ( isFrozen() ) {
+			return super.getLoadFactor();
+		}
+		long slots = 0;
+		for ( Segment seg : segments ) {
+			slots += seg.terms.capacity();
+		}
+		return (double) wordCount.get() / slots;
+	}
+
+	/*
+	 * Returns the number of times a segment grew because an insert pushed its load
+	 * factor above the threshold.
+	 * @return the number of resizes
+	 */
+	public int getResizeCount () {
+		return resizeCount.get();
+	}
+
+	/*
+	 * Grows every segment so that @expectedWords unique words fit without crossing the
+	 * load factor threshold. Words do not spread perfectly evenly, so every segment
+	 * gets room for three standard deviations above its expected share.
+	 *
+	 * @param expectedWords the number of unique words expected to be inserted
+	 */
+	public void ensureCapacity ( long expectedWords ) {
+		checkNotFrozen();
+		double share  = (double) expectedWords / segments.length;
+		long   needed = (long) Math.ceil((share + 3 * Math.sqrt(share)) / threshold);
+		for ( Segment seg : segments ) {
+			long stamp = seg.lock.writeLock();
+			try {
+				if ( needed > seg.terms.capacity() ) {
+					seg.terms.resize((int) Math.min(needed, 1 << 30));
+					seg.terms.finishResize();
+				}
+			} finally {
+				seg.lock.unlockWrite(stamp);
+			}
+		}
+	}
+
+	/*
+	 * Find the WordOccurrence object of the word in @text[start, end). Safe to call
+	 * while other threads insert.
+	 */
+	public WordOccurrence getWordOccurrence (CharSequence text, int start, int end) {
+		if ( isFrozen() ) {
+			return super.getWordOccurrence(text, start, end);
+		}
+		int hash = TermDictionary.hash(text, start, end);
+		Segment seg = segmentFor(hash);
+
+		long stamp = seg.lock.tryOptimisticRead();
+		WordOccurrence occ = seg.terms.peek(text, start, end, hash);
+		if ( !seg.lock.validate(stamp) ) {
+			stamp = seg.lock.readLock();
+			try {
+				occ = seg.terms.peek(text, start, end, hash);
+			} finally {
+				seg.lock.unlockRead(stamp);
+			}
+		}
+		return occ;
+	}
+
+	/*
+	 * Find the WordOccurrence object of the word in @text[offset, offset+length). Safe to
+	 * call while other threads insert.
+	 */
+	public WordOccurrence getWordOccurrence (char[] text, int offset, int length) {
+		if ( isFrozen() ) {
+			return super.getWordOccurrence(text, offset, length);
+		}
+		int hash = TermDictionary.hash(text, offset, length);
+		Segment seg = segmentFor(hash);
+
+		long stamp = seg.lock.tryOptimisticRead();
+		WordOccurrence occ = seg.terms.peek(text, offset, length, hash);
+		if ( !seg.lock.validate(stamp) ) {
+			stamp = seg.lock.readLock();
+			try {
+				occ = seg.terms.peek(text, offset, length, hash);
+			} finally {
+				seg.lock.unlockRead(stamp);
+			}
+		}
+		return occ;
+	}
+
+	/*
+	 * Inserts a location into the WordOccurrence of @word, adding the word if it is not
+	 * in the table yet. Safe to call from many threads at once.
+	 *
+	 * @param word to be inserted
+	 * @param docId the movie's id
+	 * @param position the word's position within the description.
+	 */
+	public void insertWordLocation (String word, int docId, int position) {
+		checkNotFrozen();
+		WordOccurrence occ = wordOccurrenceFor(word);
+		synchronized ( occ ) {
+			occ.addOccurrence(docId, position);
+		}
+		DocumentTable documents = getDocumentTable();
+		if ( position > documents.getLength(docId) ) {
+			documents.growLength(docId, position);
+		}
+		wordChanged(occ.getWord());
+	}
+
+	/*
+	 * Prints the entire hash table, one segment after the other.
+	 */
+	public void print () {
+		if ( isFrozen() ) {
+			super.print();
+			return;
+		}
+		for ( int s = 0; s < segments.length; s++ ) {
+			Segment seg = segments[s];
+			long stamp = seg.lock.writeLock();
+			try {
+				for ( int i = 0; i < seg.terms.capacity(); i++ ) {
+					StdOut.printf("[%d:%d]->", s, i);
+					WordOccurrence occ = seg.terms.getSlot(i);
+					if ( occ != null ) {
+						StdOut.print(occ.toString());
+					}
+					StdOut.println();
+				}
+			} finally {
+				seg.lock.unlockWrite(stamp);
+			}
+		}
+	}
+
+	/*
+	 * Inserts every description word of @allMovies using all threads. See the class
+	 * comment for the two phases.
+	 *
+	 * @param allMovies the movies as returned by readInputFile()
+	 */
+	protected void insertMovies ( ArrayList<ArrayList<String>> allMovies ) {
+		checkNotFrozen();
+		// movie ids follow the input order, so they are assigned before going parallel
+		final int[] docIds = new int[allMovies.size()];
+		for ( int i = 0; i < docIds.length; i++ ) {
+			docIds[i] = getDocumentTable().add(allMovies.get(i).get(0), allMovies.get(i).size() - 1);
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			// phase 1: resolve every word to its WordOccurrence, one range of movies per task
+			int tasks = threads * 4;
+			ArrayList<Callable<Postings>> resolve = new ArrayList<Callable<Postings>>();
+			for ( int t = 0; t < tasks; t++ ) {
+				final int from = (int) ((long) allMovies.size() * t / tasks);
+				final int to   = (int) ((long) allMovies.size() * (t + 1) / tasks);
+				resolve.add(new Callable<Postings>() {
+					public Postings call () {
+						return resolveWords(allMovies, docIds, from, to);
+					}
+				});
+			}
+			final ArrayList<Postings> batches = new ArrayList<Postings>();
+			for ( Future<Postings> f : pool.invokeAll(resolve) ) {
+				batches.add(f.get());
+			}
+
+			// phase 2: every task appends the locations of the words it owns, in movie order
+			ArrayList<Callable<Void>> append = new ArrayList<Callable<Void>>();
+			for ( int t = 0; t < threads; t++ ) {
+				final int owner = t;
+				append.add(new Callable<Void>() {
+					public Void call () {
+						for ( Postings batch : batches ) {
+							batch.appendOwned(owner, threads);
+						}
+						return null;
+					}
+				});
+			}
+			for ( Future<Void> f : pool.invokeAll(append) ) {
+				f.get();
+			}
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while loading movies", e);
+		} catch ( ExecutionException e ) {
+			throw new IllegalStateException("failed to load movies", e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/*
+	 * Turns the engine into a read-only index, see RUMDbSearchEngine.freeze(). Must not
+	 * be called while other threads insert.
+	 */
+	public void freeze () {
+		if ( isFrozen() ) {
+			return;
+		}
+		super.freeze();
+		segments = null;
+	}
+
+	/*
+	 * @return every WordOccurrence in all segments
+	 */
+	protected WordOccurrence[] allWords () {
+		WordOccurrence[] words = new WordOccurrence[wordCount.get()];
+		int n = 0;
+		for ( Segment seg : segments ) {
+			for ( int i = 0; i < seg.terms.size(); i++ ) {
+				words[n++] = seg.terms.getTerm(i);
+			}
+		}
+		return words;
+	}
+
+	/*
+	 * Resolves the description words of allMovies[from, to) to their WordOccurrence
+	 * objects, adding new words to the table.
+	 */
+	private Postings resolveWords ( ArrayList<ArrayList<String>> allMovies, int[] docIds, int from, int to ) {
+		Postings batch = new Postings();
+		for ( int i = from; i < to; i++ ) {
+			ArrayList<String> movie = allMovies.get(i);
+			for ( int j = 1; j < movie.size(); j++ ) {
+				String word = isWord(movie.get(j));
+				if ( word != null ) {
+					batch.add(wordOccurrenceFor(word), docIds[i], j);
+				}
+			}
+		}
+		return batch;
+	}
+
+	/*
+	 * Returns the WordOccurrence of @word, adding it to its segment if needed.
+	 */
+	private WordOccurrence wordOccurrenceFor ( String word ) {
+		WordOccurrence occ = getWordOccurrence(word, 0, word.length());
+		if ( occ != null ) {
+			return occ;
+		}
+
+		int hash = TermDictionary.hash(word, 0, word.length());
+		Segment seg = segmentFor(hash);
+		long stamp = seg.lock.writeLock();
+		try {
+			occ = seg.terms.get(word, 0, word.length(), hash);
+			if ( occ == null ) {
+				if ( (double) (seg.terms.size() + 1) / seg.terms.capacity() > threshold ) {
+					seg.terms.resize(seg.terms.capacity() * 2);
+					resizeCount.incrementAndGet();
+				}
+				occ = new WordOccurrence(word.toLowerCase(), getDocumentTable());
+				seg.terms.add(occ, hash);
+				wordCount.incrementAndGet();
+				wordAdded(occ);
+			}
+			return occ;
+		} finally {
+			seg.lock.unlockWrite(stamp);
+		}
+	}
+
+	/*
+	 * Picks a segment from the high bits of the spread hash code; TermDictionary picks
+	 * slots from the low bits.
+	 */
+	private Segment segmentFor ( int hash ) {
+		return segments[(hash * 0x85EBCA6B) >>> segmentShift];
+	}
+
+	/*
+	 * One stripe of the hash table.
+	 */
+	private static class Segment {
+
+		final StampedLock    lock;
+		final TermDictionary terms;
+
+		Segment ( int capacity ) {
+			this.lock  = new StampedLock();
+			this.terms = new TermDictionary(capacity);
+		}
+	}
+
+	/*
+	 * The (WordOccurrence, movie id, position) triples found in a range of movies, in
+	 * input order.
+	 */
+	private static class Postings {
+
+		private WordOccurrence[] words     = new WordOccurrence[256];
+		private int[]            docIds    = new int[256];
+		private int[]            positions = new int[256];
+		private int size;
+
+		void add ( WordOccurrence word, int docId, int position ) {
+			if ( size == words.length ) {
+				words     = Arrays.copyOf(words, size * 2);
+				docIds    = Arrays.copyOf(docIds, size * 2);
+				positions = Arrays.copyOf(positions, size * 2);
+			}
+			words[size]     = word;
+			docIds[size]    = docId;
+			positions[size] = position;
+			size++;
+		}
+
+		/*
+		 * Appends the locations of the words owned by @owner out of @owners.
+		 */
+		void appendOwned ( int owner, int owners ) {
+			for ( int i = 0; i < size; i++ ) {
+				WordOccurrence occ = words[i];
+				if ( (occ.getWord().hashCode() & 0x7fffffff) % owners == owner ) {
+					synchronized ( occ ) {
+						occ.addOccurrence(docIds[i], positions[i]);
+					}
+				}
+			}
+		}
+	}
+}
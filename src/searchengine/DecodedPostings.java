@@ -0,0 +1,98 @@
+package searchengine;
+
+/*
+ * This class holds a word's postings fully decoded into flat arrays, for searches that
+ * use the same word many times and would otherwise decode its blocks for each of them
+ * (see RUMDbSearchEngine.searchBatch()).
+ *
+ * The word's movies are docs[0, docCount), in increasing order, and the positions in
+ * movie docs[i] are positions[starts[i], starts[i + 1]). The arrays are never modified
+ * after construction, so any number of threads can read them.
+ */
+public class DecodedPostings {
+
+	private final int[] docs;         // the movies, in increasing order
+	private final int[] starts;       // index in positions of each movie's first position, plus the end
+	private final int[] positions;    // every position, movie after movie
+
+	/*
+	 * Decodes the postings of @occ.
+	 */
+	public DecodedPostings ( WordOccurrence occ ) {
+		this.docs      = new int[occ.getDocumentCount()];
+		this.starts    = new int[docs.length + 1];
+		this.positions = new int[occ.getOccurrenceCount()];
+		PostingsCursor cursor = occ.cursor();
+		int n = 0, p = 0;
+		for ( int doc = cursor.nextDoc(); doc != PostingsCursor.NO_MORE_DOCS; doc = cursor.nextDoc() ) {
+			docs[n]   = doc;
+			starts[n] = p;
+			System.arraycopy(cursor.positions(), 0, positions, p, cursor.freq());
+			p += cursor.freq();
+			n++;
+		}
+		starts[n] = p;
+	}
+
+	/*
+	 * @return the number of movies of the word
+	 */
+	public int docCount () {
+		return docs.length;
+	}
+
+	/*
+	 * @param i index of a movie, 0 <= i < docCount()
+	 * @return the movie's id
+	 */
+	public int doc ( int i ) {
+		return docs[i];
+	}
+
+	/*
+	 * @param i index of a movie, 0 <= i < docCount()
+	 * @return index in getPositions() of the movie's first position
+	 */
+	public int start ( int i ) {
+		return starts[i];
+	}
+
+	/*
+	 * @param i index of a movie, 0 <= i < docCount()
+	 * @return index in getPositions() after the movie's last position
+	 */
+	public int end ( int i ) {
+		return starts[i + 1];
+	}
+
+	/*
+	 * @return every position of the word, see start() and end()
+	 */
+	public int[] getPositions () {
+		return positions;
+	}
+
+	/*
+	 * @param from index of a movie to start from
+	 * @return the index of the first movie >= @target from @from on, or docCount() if
+	 * 		there is none, found by an exponential then binary search
+	 */
+	public int advance ( int from, int target ) {
+		int lo = from, hi = from, step = 1;
+		while ( hi < docs.length && docs[hi] < target ) {
+			lo    = hi + 1;
+			hi   += step;
+			step <<= 1;
+		}
+		hi = Math.min(hi, docs.length);
+		while ( lo < hi ) {
+			int mid = (lo + hi) >>> 1;
+			if ( docs[mid] < target ) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+}
@@ -0,0 +1,297 @@
+package searchengine;
+
+/*
+ * This class is a compressed set of movie ids, laid out like a Roaring bitmap.
+ *
+ * The ids are split by their high 16 bits into chunks of 65536. A chunk with at most
+ * ARRAY_MAX ids is a sorted array of their low 16 bits (2 bytes per id); a denser chunk
+ * is a bitmap of 1024 longs (8 KB, whatever its number of ids). So a rare word costs
+ * 2 bytes per movie, a frequent one at most a bit per movie, and the intersection of
+ * two sets is computed chunk by chunk: a lookup of an array's ids in a bitmap, an AND
+ * of two bitmaps, or for two arrays a linear merge when their sizes are close, and an
+ * exponential search of the larger one for each id of the smaller one when it is at
+ * least GALLOP_RATIO times larger, so that the cost follows the smaller array.
+ */
+public class DocBitmap {
+
+	public static final int ARRAY_MAX = 4096;
+
+	public static final int GALLOP_RATIO = 16;
+
+	private char[]   keys;        // high 16 bits of each chunk, ascending
+	private char[][] arrays;      // per chunk: sorted low 16 bits, or null for a bitmap
+	private long[][] bitmaps;     // per chunk: 1024 words, or null for an array
+	private int[]    counts;      // per chunk: number of ids
+	private int      chunkCount;  // number of chunks
+	private int      cardinality; // number of ids
+
+	public DocBitmap () {
+		this.keys    = new char[1];
+		this.arrays  = new char[1][];
+		this.bitmaps = new long[1][];
+		this.counts  = new int[1];
+	}
+
+	/*
+	 * @return the number of ids in the set
+	 */
+	public int cardinality () {
+		return cardinality;
+	}
+
+	/*
+	 * @param doc a movie id >= 0
+	 * @return true if @doc is in the set
+	 */
+	public boolean contains ( int doc ) {
+		int c = chunkOf((char) (doc >>> 16));
+		if ( c < 0 ) {
+			return false;
+		}
+		char low = (char) doc;
+		if ( bitmaps[c] != null ) {
+			return (bitmaps[c][low >>> 6] & (1L << low)) != 0;
+		}
+		return binarySearch(arrays[c], counts[c], low) >= 0;
+	}
+
+	/*
+	 * Adds @doc to the set. Ids are usually added in increasing order, which appends to
+	 * the last chunk.
+	 * @param doc a movie id >= 0
+	 */
+	public void add ( int doc ) {
+		char key = (char) (doc >>> 16);
+		int c = chunkCount > 0 && keys[chunkCount - 1] == key ? chunkCount - 1 : chunkOf(key);
+		if ( c < 0 ) {
+			c = insertChunk(-c - 1, key);
+		}
+
+		char low = (char) doc;
+		if ( bitmaps[c] != null ) {
+			long bit = 1L << low;
+			if ( (bitmaps[c][low >>> 6] & bit) == 0 ) {
+				bitmaps[c][low >>> 6] |= bit;
+				counts[c]++;
+				cardinality++;
+			}
+			return;
+		}
+
+		char[] array = arrays[c];
+		int n = counts[c];
+		int i = n;
+		if ( n > 0 && array[n - 1] >= low ) {
+			i = binarySearch(array, n, low);
+			if ( i >= 0 ) {
+				return;
+			}
+			i = -i - 1;
+		}
+		if ( n == ARRAY_MAX ) {
+			toBitmap(c);
+			add(doc);
+			return;
+		}
+		if ( n == array.length ) {
+			char[] grown = new char[Math.min(ARRAY_MAX, n * 2)];
+			System.arraycopy(array, 0, grown, 0, n);
+			array = arrays[c] = grown;
+		}
+		System.arraycopy(array, i, array, i + 1, n - i);
+		array[i] = low;
+		counts[c]++;
+		cardinality++;
+	}
+
+	/*
+	 * Intersects two sets.
+	 * @return the ids in both @a and @b, in increasing order
+	 */
+	public static int[] and ( DocBitmap a, DocBitmap b ) {
+		int[] out = new int[Math.min(a.cardinality, b.cardinality)];
+		int n = 0;
+		int i = 0, j = 0;
+		while ( i < a.chunkCount && j < b.chunkCount ) {
+			if ( a.keys[i] < b.keys[j] ) {
+				i++;
+			} else if ( a.keys[i] > b.keys[j] ) {
+				j++;
+			} else {
+				int high = a.keys[i] << 16;
+				if ( a.bitmaps[i] == null && b.bitmaps[j] == null ) {
+					n = andArrays(a.arrays[i], a.counts[i], b.arrays[j], b.counts[j], high, out, n);
+				} else if ( a.bitmaps[i] == null ) {
+					n = andArrayBitmap(a.arrays[i], a.counts[i], b.bitmaps[j], high, out, n);
+				} else if ( b.bitmaps[j] == null ) {
+					n = andArrayBitmap(b.arrays[j], b.counts[j], a.bitmaps[i], high, out, n);
+				} else {
+					n = andBitmaps(a.bitmaps[i], b.bitmaps[j], high, out, n);
+				}
+				i++;
+				j++;
+			}
+		}
+		if ( n == out.length ) {
+			return out;
+		}
+		int[] trimmed = new int[n];
+		System.arraycopy(out, 0, trimmed, 0, n);
+		return trimmed;
+	}
+
+	private static int andArrays ( char[] a, int na, char[] b, int nb, int high, int[] out, int n ) {
+		if ( na * GALLOP_RATIO <= nb ) {
+			return gallop(a, na, b, nb, high, out, n);
+		}
+		if ( nb * GALLOP_RATIO <= na ) {
+			return gallop(b, nb, a, na, high, out, n);
+		}
+		int i = 0, j = 0;
+		while ( i < na && j < nb ) {
+			if ( a[i] < b[j] ) {
+				i++;
+			} else if ( a[i] > b[j] ) {
+				j++;
+			} else {
+				out[n++] = high | a[i];
+				i++;
+				j++;
+			}
+		}
+		return n;
+	}
+
+	/*
+	 * Intersects the small array a[0, na) with the large array b[0, nb) by searching
+	 * b, from where the previous search ended, with steps of 1, 2, 4, ... and then a
+	 * binary search.
+	 */
+	private static int gallop ( char[] a, int na, char[] b, int nb, int high, int[] out, int n ) {
+		int j = 0;
+		for ( int i = 0; i < na && j < nb; i++ ) {
+			char key = a[i];
+			int lo = j, hi = j, step = 1;
+			while ( hi < nb && b[hi] < key ) {
+				lo    = hi + 1;
+				hi   += step;
+				step <<= 1;
+			}
+			hi = Math.min(hi, nb);
+			while ( lo < hi ) {
+				int mid = (lo + hi) >>> 1;
+				if ( b[mid] < key ) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+			j = lo;
+			if ( j < nb && b[j] == key ) {
+				out[n++] = high | key;
+				j++;
+			}
+		}
+		return n;
+	}
+
+	private static int andArrayBitmap ( char[] a, int na, long[] bitmap, int high, int[] out, int n ) {
+		for ( int i = 0; i < na; i++ ) {
+			char low = a[i];
+			if ( (bitmap[low >>> 6] & (1L << low)) != 0 ) {
+				out[n++] = high | low;
+			}
+		}
+		return n;
+	}
+
+	private static int andBitmaps ( long[] a, long[] b, int high, int[] out, int n ) {
+		for ( int w = 0; w < a.length; w++ ) {
+			long word = a[w] & b[w];
+			while ( word != 0 ) {
+				out[n++] = high | (w << 6) | Long.numberOfTrailingZeros(word);
+				word &= word - 1;
+			}
+		}
+		return n;
+	}
+
+	/*
+	 * Converts the array chunk @c, which holds ARRAY_MAX ids, to a bitmap.
+	 */
+	private void toBitmap ( int c ) {
+		long[] bitmap = new long[1024];
+		for ( int i = 0; i < counts[c]; i++ ) {
+			char low = arrays[c][i];
+			bitmap[low >>> 6] |= 1L << low;
+		}
+		bitmaps[c] = bitmap;
+		arrays[c]  = null;
+	}
+
+	/*
+	 * @return the index of the chunk @key, or -(insertion point) - 1 if there is none
+	 */
+	private int chunkOf ( char key ) {
+		int lo = 0, hi = chunkCount - 1;
+		while ( lo <= hi ) {
+			int mid = (lo + hi) >>> 1;
+			if ( keys[mid] < key ) {
+				lo = mid + 1;
+			} else if ( keys[mid] > key ) {
+				hi = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -lo - 1;
+	}
+
+	/*
+	 * Inserts an empty array chunk @key at index @c.
+	 * @return @c
+	 */
+	private int insertChunk ( int c, char key ) {
+		if ( chunkCount == keys.length ) {
+			int size = chunkCount * 2;
+			char[]   k = new char[size];
+			char[][] a = new char[size][];
+			long[][] b = new long[size][];
+			int[]    n = new int[size];
+			System.arraycopy(keys, 0, k, 0, chunkCount);
+			System.arraycopy(arrays, 0, a, 0, chunkCount);
+			System.arraycopy(bitmaps, 0, b, 0, chunkCount);
+			System.arraycopy(counts, 0, n, 0, chunkCount);
+			keys = k; arrays = a; bitmaps = b; counts = n;
+		}
+		int move = chunkCount - c;
+		System.arraycopy(keys, c, keys, c + 1, move);
+		System.arraycopy(arrays, c, arrays, c + 1, move);
+		System.arraycopy(bitmaps, c, bitmaps, c + 1, move);
+		System.arraycopy(counts, c, counts, c + 1, move);
+		keys[c]    = key;
+		arrays[c]  = new char[4];
+		bitmaps[c] = null;
+		counts[c]  = 0;
+		chunkCount++;
+		return c;
+	}
+
+	/*
+	 * @return the index of @key in a[0, n), or -(insertion point) - 1 if it is not there
+	 */
+	private static int binarySearch ( char[] a, int n, char key ) {
+		int lo = 0, hi = n - 1;
+		while ( lo <= hi ) {
+			int mid = (lo + hi) >>> 1;
+			if ( a[mid] < key ) {
+				lo = mid + 1;
+			} else if ( a[mid] > key ) {
+				hi = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -lo - 1;
+	}
+}
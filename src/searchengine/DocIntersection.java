@@ -0,0 +1,94 @@
+package searchengine;
+
+import java.util.Arrays;
+
+/*
+ * This class walks the movies that contain every one of a few words, in increasing id
+ * order, with a PostingsCursor per word positioned on each of them.
+ *
+ * The movies are found first, by intersecting the words' DocBitmaps from the word in
+ * the fewest movies up, which merges or gallops depending on the sizes (see DocBitmap).
+ * The cursors are then only advanced to those movies, skipping the blocks of postings
+ * in between without decoding them, so the cost follows the rarest word.
+ */
+public class DocIntersection {
+
+	private final PostingsCursor[] cursors;    // a cursor per word, in the words' order
+	private final int[] candidates;            // the movies in every word, null for one word
+	private int next;                          // index in candidates of the next movie
+	private int doc;                           // current movie id
+
+	/*
+	 * @param words the words' occurrences, at least one; a word may be given twice
+	 */
+	public DocIntersection ( WordOccurrence... words ) {
+		this.cursors = new PostingsCursor[words.length];
+		int[] order  = new int[words.length];
+		for ( int i = 0; i < words.length; i++ ) {
+			cursors[i] = words[i].cursor();
+			int j = i;
+			while ( j > 0 && words[order[j - 1]].getDocumentCount() > words[i].getDocumentCount() ) {
+				order[j] = order[j - 1];
+				j--;
+			}
+			order[j] = i;
+		}
+		this.doc = -1;
+
+		if ( words.length == 1 ) {
+			this.candidates = null;
+			return;
+		}
+		int[] docs = DocBitmap.and(words[order[0]].getDocSet(), words[order[1]].getDocSet());
+		int n = docs.length;
+		for ( int i = 2; i < words.length; i++ ) {
+			DocBitmap set = words[order[i]].getDocSet();
+			int kept = 0;
+			for ( int k = 0; k < n; k++ ) {
+				if ( set.contains(docs[k]) ) {
+					docs[kept++] = docs[k];
+				}
+			}
+			n = kept;
+		}
+		this.candidates = n == docs.length ? docs : Arrays.copyOf(docs, n);
+	}
+
+	/*
+	 * @return the current movie id, -1 before the first nextDoc(), NO_MORE_DOCS at the end
+	 */
+	public int docId () {
+		return doc;
+	}
+
+	/*
+	 * Moves every cursor to the next movie that contains all the words.
+	 * @return the movie's id, or PostingsCursor.NO_MORE_DOCS if there are no more movies
+	 */
+	public int nextDoc () {
+		if ( doc == PostingsCursor.NO_MORE_DOCS ) {
+			return doc;
+		}
+		if ( candidates == null ) {
+			doc = cursors[0].nextDoc();
+			return doc;
+		}
+		if ( next == candidates.length ) {
+			doc = PostingsCursor.NO_MORE_DOCS;
+			return doc;
+		}
+		doc = candidates[next++];
+		for ( PostingsCursor cursor : cursors ) {
+			cursor.advance(doc);
+		}
+		return doc;
+	}
+
+	/*
+	 * @param i index of a word, in the order given to the constructor
+	 * @return the word's cursor, positioned on the current movie
+	 */
+	public PostingsCursor cursor ( int i ) {
+		return cursors[i];
+	}
+}
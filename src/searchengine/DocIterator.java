@@ -0,0 +1,228 @@
+package searchengine;
+
+import java.util.List;
+
+/*
+ * This class walks a set of movie ids in increasing order. It is the node type of the
+ * iterator trees that BooleanQuery plans: the leaves are PostingsCursors, and the
+ * static factories below combine them into conjunctions, exclusions and unions.
+ *
+ * An iterator starts before its first movie (docId() is -1), and nextDoc() and
+ * advance() return NO_MORE_DOCS once it is exhausted. cost() estimates the number of
+ * movies it yields, which the planner uses to order conjunctions.
+ */
+public abstract class DocIterator {
+
+	public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+	/*
+	 * @return the current movie id, -1 before the first nextDoc(), NO_MORE_DOCS at the end
+	 */
+	public abstract int docId ();
+
+	/*
+	 * Moves to the next movie.
+	 * @return the movie's id, or NO_MORE_DOCS if there are no more movies
+	 */
+	public abstract int nextDoc ();
+
+	/*
+	 * Moves to the first movie whose id is >= @target; does not move if the current
+	 * movie already is.
+	 * @return the movie's id, or NO_MORE_DOCS if there is none
+	 */
+	public abstract int advance ( int target );
+
+	/*
+	 * @return an upper bound of the number of movies this iterator yields
+	 */
+	public abstract long cost ();
+
+	/*
+	 * @return an iterator over no movie
+	 */
+	public static DocIterator empty () {
+		return new All(0);
+	}
+
+	/*
+	 * @param size the number of movies
+	 * @return an iterator over every movie id from 0 to @size - 1
+	 */
+	public static DocIterator all ( int size ) {
+		return new All(size);
+	}
+
+	/*
+	 * Returns the movies in every one of @required and none of @excluded. @required is
+	 * walked from its first iterator, which should be the cheapest: every other one is
+	 * advanced to its movies, and the excluded ones are only advanced to check them.
+	 *
+	 * @param required at least one iterator
+	 * @param excluded iterators whose movies are skipped, possibly none
+	 */
+	public static DocIterator and ( List<DocIterator> required, List<DocIterator> excluded ) {
+		return new And(required.toArray(new DocIterator[required.size()]),
+				excluded.toArray(new DocIterator[excluded.size()]));
+	}
+
+	/*
+	 * Returns the movies in any of @iterators, which are kept in a min-heap by current
+	 * movie so that a step costs a logarithm of their number.
+	 *
+	 * @param iterators at least one iterator
+	 */
+	public static DocIterator or ( List<DocIterator> iterators ) {
+		return new Or(iterators.toArray(new DocIterator[iterators.size()]));
+	}
+
+	private static class All extends DocIterator {
+
+		private final int size;
+		private int doc = -1;
+
+		All ( int size ) {
+			this.size = size;
+		}
+
+		public int docId () {
+			return doc;
+		}
+
+		public int nextDoc () {
+			return advance(doc + 1);
+		}
+
+		public int advance ( int target ) {
+			if ( doc < target ) {
+				doc = target < size ? target : NO_MORE_DOCS;
+			}
+			return doc;
+		}
+
+		public long cost () {
+			return size;
+		}
+	}
+
+	private static class And extends DocIterator {
+
+		private final DocIterator[] required;
+		private final DocIterator[] excluded;
+		private int doc = -1;
+
+		And ( DocIterator[] required, DocIterator[] excluded ) {
+			this.required = required;
+			this.excluded = excluded;
+		}
+
+		public int docId () {
+			return doc;
+		}
+
+		public int nextDoc () {
+			return doc = align(required[0].nextDoc());
+		}
+
+		public int advance ( int target ) {
+			if ( doc >= target ) {
+				return doc;
+			}
+			return doc = align(required[0].advance(target));
+		}
+
+		/*
+		 * @return the first movie >= @target, which is the first iterator's movie, that
+		 * 		all the required iterators and none of the excluded ones hold
+		 */
+		private int align ( int target ) {
+			candidates:
+			while ( target != NO_MORE_DOCS ) {
+				for ( int i = 1; i < required.length; i++ ) {
+					int d = required[i].advance(target);
+					if ( d > target ) {
+						target = required[0].advance(d);
+						continue candidates;
+					}
+				}
+				for ( DocIterator skip : excluded ) {
+					if ( skip.advance(target) == target ) {
+						target = required[0].nextDoc();
+						continue candidates;
+					}
+				}
+				return target;
+			}
+			return NO_MORE_DOCS;
+		}
+
+		public long cost () {
+			return required[0].cost();
+		}
+	}
+
+	private static class Or extends DocIterator {
+
+		private final DocIterator[] heap;
+		private int doc = -1;
+
+		Or ( DocIterator[] iterators ) {
+			this.heap = iterators;
+		}
+
+		public int docId () {
+			return doc;
+		}
+
+		public int nextDoc () {
+			if ( doc == NO_MORE_DOCS ) {
+				return doc;
+			}
+			int current = doc;
+			while ( heap[0].docId() == current ) {
+				heap[0].nextDoc();
+				siftDown();
+			}
+			return doc = heap[0].docId();
+		}
+
+		public int advance ( int target ) {
+			while ( heap[0].docId() < target ) {
+				heap[0].advance(target);
+				siftDown();
+			}
+			return doc = heap[0].docId();
+		}
+
+		/*
+		 * Moves heap[0], whose movie grew, down to its place.
+		 */
+		private void siftDown () {
+			DocIterator top = heap[0];
+			int h = 0;
+			while ( true ) {
+				int child = 2 * h + 1;
+				if ( child >= heap.length ) {
+					break;
+				}
+				if ( child + 1 < heap.length && heap[child + 1].docId() < heap[child].docId() ) {
+					child++;
+				}
+				if ( heap[child].docId() >= top.docId() ) {
+					break;
+				}
+				heap[h] = heap[child];
+				h = child;
+			}
+			heap[h] = top;
+		}
+
+		public long cost () {
+			long cost = 0;
+			for ( DocIterator it : heap ) {
+				cost += it.cost();
+			}
+			return cost;
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package searchengine;
+
+import java.util.HashMap;
+
+/*
+ * This class assigns every movie a dense integer id, in the order the movies are added,
+ * and maps the ids back to the movies' titles and description lengths.
+ *
+ * Postings refer to movies by id, so a word location costs an int instead of a
+ * reference to the title, and comparing two locations' movies is an int comparison.
+ * The lengths are the number of words of each description, noise words included, which
+ * scoring uses to tell a word in a short description from one in a long description.
+ */
+public class DocumentTable {
+
+	private String[] titles;                // id -> movie title
+	private int[]    lengths;               // id -> number of words in the description
+	private long     totalLength;           // sum of lengths
+	private int      size;                  // number of movies
+	private HashMap<String, Integer> ids;   // title -> id of the last movie with that title
+
+	public DocumentTable () {
+		this.titles  = new String[64];
+		this.lengths = new int[64];
+		this.size    = 0;
+		this.ids    = new HashMap<String, Integer>();
+	}
+
+	/*
+	 * Adds a movie whose description length is not known yet. Movies with the same
+	 * title get different ids.
+	 *
+	 * @param title the movie's title
+	 * @return the new movie's id
+	 */
+	public int add ( String title ) {
+		return add(title, 0);
+	}
+
+	/*
+	 * Adds a movie. Movies with the same title get different ids.
+	 *
+	 * @param title the movie's title
+	 * @param length the number of words in the movie's description
+	 * @return the new movie's id
+	 */
+	public synchronized int add ( String title, int length ) {
+		if ( size == titles.length ) {
+			String[] grown = new String[size * 2];
+			System.arraycopy(titles, 0, grown, 0, size);
+			titles  = grown;
+			int[] grownLengths = new int[size * 2];
+			System.arraycopy(lengths, 0, grownLengths, 0, size);
+			lengths = grownLengths;
+		}
+		titles[size]  = title;
+		lengths[size] = length;
+		totalLength  += length;
+		ids.put(title, size);
+		return size++;
+	}
+
+	/*
+	 * Makes the description of movie @id at least @length words long, for words
+	 * inserted one at a time at positions past the known length.
+	 *
+	 * @param id a movie id, 0 <= id < size()
+	 * @param length the description's minimum number of words
+	 */
+	public synchronized void growLength ( int id, int length ) {
+		if ( lengths[id] < length ) {
+			totalLength += length - lengths[id];
+			lengths[id]  = length;
+		}
+	}
+
+	/*
+	 * Returns the id of the most recently added movie titled @title, adding the movie if
+	 * there is none.
+	 *
+	 * @param title the movie's title
+	 * @return the movie's id
+	 */
+	public synchronized int idOf ( String title ) {
+		Integer id = ids.get(title);
+		return id != null ? id : add(title);
+	}
+
+	/*
+	 * @param id a movie id, 0 <= id < size()
+	 * @return the movie's title
+	 */
+	public String getTitle ( int id ) {
+		return titles[id];
+	}
+
+	/*
+	 * @param id a movie id, 0 <= id < size()
+	 * @return the number of words in the movie's description
+	 */
+	public int getLength ( int id ) {
+		return lengths[id];
+	}
+
+	/*
+	 * @return the average number of words of a description, 0 if there are no movies
+	 */
+	public synchronized double averageLength () {
+		return size == 0 ? 0 : (double) totalLength / size;
+	}
+
+	/*
+	 * @return the number of movies
+	 */
+	public int size () {
+		return size;
+	}
+}
@@ -7,13 +7,14 @@ public class Driver {
     public static void main (String[] args) {
 
 		int hashTableSize = 20;
-        double threshold = 8;
+        double threshold = RUMDbSearchEngine.MAX_LOAD_FACTOR;
         String inputFile = "dataSample.txt";
         String noiseWordsFile = "noisewords.txt";
         
         RUMDbSearchEngine rudb = new RUMDbSearchEngine(hashTableSize, threshold, noiseWordsFile);
-		rudb.insertMoviesIntoHashTable(inputFile);
+		rudb.insertMoviesIntoHashTable(inputFile, true);
         rudb.print();
+        StdOut.println("Resizes while loading: " + rudb.getResizeCount());
 
         String word1 = "young";
         String word2 = "man";
@@ -0,0 +1,65 @@
+package searchengine;
+
+/*
+ * This class scores a movie for a query of description words by BM25 plus a proximity
+ * boost, so that rare words count more than common ones, a word counts more in a short
+ * description than in a long one, and words close to each other add to the score.
+ *
+ * For a word t in n of the N movies, occurring tf times in a description of dl words
+ * when descriptions have avgdl words on average:
+ * 		idf(t)  = ln(1 + (N - n + 0.5) / (n + 0.5))
+ * 		bm25(t) = idf(t) * tf * (K1 + 1) / (tf + K1 * (1 - B + B * dl / avgdl))
+ * and two words at minimum distance d add
+ * 		PROXIMITY_WEIGHT * min(idf(a), idf(b)) / (1 + d)
+ * which is bounded by the rarer word's idf, so a pair of common words close together
+ * does not outrank a rare word.
+ */
+public class HybridScorer {
+
+	public static final double K1 = 1.2;
+	public static final double B  = 0.75;
+	public static final double PROXIMITY_WEIGHT = 1.0;
+
+	private final DocumentTable documents;
+	private final int    movieCount;      // N
+	private final double averageLength;   // avgdl, at least 1
+
+	/*
+	 * @param documents the movies' lengths, read once here
+	 */
+	public HybridScorer ( DocumentTable documents ) {
+		this.documents     = documents;
+		this.movieCount    = documents.size();
+		this.averageLength = Math.max(1, documents.averageLength());
+	}
+
+	/*
+	 * @param occ a word's occurrences
+	 * @return the word's inverse document frequency, > 0
+	 */
+	public double idf ( WordOccurrence occ ) {
+		double n = occ.getDocumentCount();
+		return Math.log(1 + (movieCount - n + 0.5) / (n + 0.5));
+	}
+
+	/*
+	 * @param idf the word's idf()
+	 * @param tf the number of times the word occurs in the movie's description
+	 * @param docId the movie's id
+	 * @return the word's BM25 score in the movie
+	 */
+	public double termScore ( double idf, int tf, int docId ) {
+		double norm = K1 * (1 - B + B * documents.getLength(docId) / averageLength);
+		return idf * tf * (K1 + 1) / (tf + norm);
+	}
+
+	/*
+	 * @param idfA the first word's idf()
+	 * @param idfB the second word's idf()
+	 * @param distance the words' minimum distance in the movie, >= 0
+	 * @return the proximity boost of the two words
+	 */
+	public double proximity ( double idfA, double idfB, int distance ) {
+		return PROXIMITY_WEIGHT * Math.min(idfA, idfB) / (1 + distance);
+	}
+}
@@ -0,0 +1,101 @@
+package searchengine;
+
+/*
+ * This class accepts the words within a few edits (insertions, deletions and
+ * substitutions of one character) of a given word, reading them one character at a
+ * time.
+ *
+ * A state is a row of the edit distance table of the word against the characters read
+ * so far: row[i] is the distance from the first i characters of the word. Reading a
+ * character computes the next row from the previous one, so the words of a sorted
+ * dictionary that share a prefix also share the states of that prefix, and once no
+ * entry of a row is within the edit limit no word with that prefix can be accepted,
+ * so the whole range of such words is skipped (see SortedTermDictionary.fuzzy()).
+ * A row costs the length of the word to compute.
+ */
+public class LevenshteinAutomaton {
+
+	public static final int MAX_EDITS = 2;
+
+	private final String word;      // the word to match
+	private final int    maxEdits;  // accepted distance
+
+	/*
+	 * @param word the word to match
+	 * @param maxEdits the number of edits accepted, 0 <= maxEdits <= MAX_EDITS
+	 */
+	public LevenshteinAutomaton ( String word, int maxEdits ) {
+		if ( maxEdits < 0 || maxEdits > MAX_EDITS ) {
+			throw new IllegalArgumentException("edits must be between 0 and " + MAX_EDITS + ": " + maxEdits);
+		}
+		this.word     = word;
+		this.maxEdits = maxEdits;
+	}
+
+	/*
+	 * @return the state before any character is read
+	 */
+	public int[] start () {
+		int[] row = new int[word.length() + 1];
+		for ( int i = 0; i < row.length; i++ ) {
+			row[i] = i;
+		}
+		return row;
+	}
+
+	/*
+	 * Reads @c in state @row.
+	 * @param out receives the next state, as long as @row
+	 * @return @out
+	 */
+	public int[] step ( int[] row, char c, int[] out ) {
+		out[0] = row[0] + 1;
+		for ( int i = 1; i < row.length; i++ ) {
+			int cost = word.charAt(i - 1) == c ? 0 : 1;
+			out[i] = Math.min(row[i - 1] + cost, Math.min(row[i] + 1, out[i - 1] + 1));
+		}
+		return out;
+	}
+
+	/*
+	 * @return true if some word starting with the characters read to @row is accepted
+	 */
+	public boolean canMatch ( int[] row ) {
+		for ( int d : row ) {
+			if ( d <= maxEdits ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * @return the distance of the characters read to @row from the word, or
+	 * 		maxEdits + 1 if they are not accepted
+	 */
+	public int distance ( int[] row ) {
+		return Math.min(row[row.length - 1], maxEdits + 1);
+	}
+
+	/*
+	 * @return the distance of @candidate from the word, or maxEdits + 1 if it is not
+	 * 		accepted
+	 */
+	public int distance ( String candidate ) {
+		int[] row  = start();
+		int[] next = new int[row.length];
+		for ( int i = 0; i < candidate.length() && canMatch(row); i++ ) {
+			int[] t = step(row, candidate.charAt(i), next);
+			next = row;
+			row  = t;
+		}
+		return canMatch(row) ? distance(row) : maxEdits + 1;
+	}
+
+	/*
+	 * @return the number of edits accepted
+	 */
+	public int getMaxEdits () {
+		return maxEdits;
+	}
+}
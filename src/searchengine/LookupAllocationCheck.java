@@ -0,0 +1,112 @@
+package searchengine;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/*
+ * Checks that looking a word up does not allocate, in RUMDbSearchEngine before and after
+ * freeze() and in ConcurrentRUMDbSearchEngine.
+ *
+ * Each engine loads the input file, then getWordOccurrence() is called with words and
+ * misses of mixed case given as Strings, as a StringBuilder, as slices of a larger
+ * CharSequence and as char[] slices. After a warm up, so that the lookups are compiled,
+ * the bytes allocated by the thread over @rounds more rounds are measured with
+ * ThreadMXBean.getThreadAllocatedBytes() and must be 0.
+ *
+ * Usage: java searchengine.LookupAllocationCheck [inputFile] [rounds]
+ */
+public class LookupAllocationCheck {
+
+	private static final String[] WORDS = { "young", "Man", "WOMAN", "story", "zzzz", "Love" };
+
+	static long warmUpHits;   // keeps the warm up lookups from being optimized away
+
+	public static void main ( String[] args ) {
+
+		String inputFile = args.length > 0 ? args[0] : "data.txt";
+		int    rounds    = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+		String noiseWordsFile = "noisewords.txt";
+
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if ( !(threads instanceof com.sun.management.ThreadMXBean)
+				|| !((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported() ) {
+			StdOut.println("this JVM does not measure allocated bytes");
+			return;
+		}
+		com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+		allocations.setThreadAllocatedMemoryEnabled(true);
+
+		RUMDbSearchEngine engine = new RUMDbSearchEngine(20, 0.75, noiseWordsFile);
+		engine.insertMoviesIntoHashTable(inputFile);
+		boolean passed = check("RUMDbSearchEngine", engine, allocations, rounds);
+
+		ConcurrentRUMDbSearchEngine concurrent = new ConcurrentRUMDbSearchEngine(20, 0.75, noiseWordsFile, 2);
+		concurrent.insertMoviesIntoHashTable(inputFile);
+		passed &= check("ConcurrentRUMDbSearchEngine", concurrent, allocations, rounds);
+
+		engine.freeze();
+		passed &= check("RUMDbSearchEngine, frozen", engine, allocations, rounds);
+
+		if ( !passed ) {
+			System.exit(1);
+		}
+	}
+
+	/*
+	 * Warms up, then measures the bytes allocated by @rounds rounds of lookups in @engine.
+	 * @return true if none were
+	 */
+	private static boolean check ( String name, RUMDbSearchEngine engine,
+			com.sun.management.ThreadMXBean allocations, int rounds ) {
+		// every word surrounded by other characters, to look slices up
+		StringBuilder text = new StringBuilder();
+		int[] starts = new int[WORDS.length];
+		for ( int w = 0; w < WORDS.length; w++ ) {
+			text.append("..");
+			starts[w] = text.length();
+			text.append(WORDS[w]);
+		}
+		char[] chars = text.toString().toCharArray();
+		StringBuilder builder = new StringBuilder("Young");
+
+		// many short calls, so that lookUp() itself is compiled and not only its loop
+		for ( int i = 0; i < 1000; i++ ) {
+			warmUpHits += lookUp(engine, text, chars, starts, builder, 100);
+		}
+		long thread = Thread.currentThread().getId();
+		long before = allocations.getThreadAllocatedBytes(thread);
+		long found  = lookUp(engine, text, chars, starts, builder, rounds);
+		long bytes  = allocations.getThreadAllocatedBytes(thread) - before;
+
+		StdOut.printf("%-30s %10d lookups %8d hits %8d bytes allocated  %s%n",
+			name, (long) rounds * WORDS.length * 4, found, bytes, bytes == 0 ? "ok" : "FAILED");
+		return bytes == 0;
+	}
+
+	/*
+	 * Looks every word up @rounds times in each of the four forms.
+	 * @return the number of words found
+	 */
+	private static long lookUp ( RUMDbSearchEngine engine, StringBuilder text, char[] chars, int[] starts,
+			StringBuilder builder, int rounds ) {
+		long found = 0;
+		for ( int r = 0; r < rounds; r++ ) {
+			for ( int w = 0; w < WORDS.length; w++ ) {
+				int end = starts[w] + WORDS[w].length();
+				if ( engine.getWordOccurrence(WORDS[w]) != null ) {
+					found++;
+				}
+				if ( engine.getWordOccurrence(text, starts[w], end) != null ) {
+					found++;
+				}
+				if ( engine.getWordOccurrence(chars, starts[w], WORDS[w].length()) != null ) {
+					found++;
+				}
+				if ( engine.getWordOccurrence(builder) != null ) {
+					found++;
+				}
+			}
+		}
+		return found;
+	}
+}
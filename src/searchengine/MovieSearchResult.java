@@ -1,97 +1,259 @@
-package searchengine;
-
-import java.util.ArrayList;
-
-/*
- * This class represents the distance between two searched words from the same movie description.
- * The searched words are referred as wordA and wordB.
- * 
- */
-public class MovieSearchResult implements Comparable<MovieSearchResult> {
-
-    private String title;                      // title of the movie
-    private int    minDistance;                // the minimum distance between two locations of wordA and wordB
-    private ArrayList<Integer> wordALocations; // holds wordA's locations in the movie's description.
-    private ArrayList<Integer> wordBLocations; // holds wordB's locations int the movie's description.
-
-    public MovieSearchResult (String title) {
-        this.title       = title;
-        this.minDistance = -1;
-        this.wordALocations  = new ArrayList<Integer>();
-        this.wordBLocations  = new ArrayList<Integer>();
-    }
-    
-    /*
-     * @return movie title
-     */ 
-    public String getTitle(){
-        return this.title;
-    }
-
-    /*
-     * Updates the title
-     * @title the movie's title that this object refers to
-     */ 
-    public void setTitle(String title){
-        this.title = title;
-    }
-
-    /*
-     * @return the shortest distance between the words, wordA and wordB
-     */ 
-    public int getMinDistance(){
-        return this.minDistance;
-    }
-
-    /*
-     * Updates the minimum distance betwee the words wordA and wordB
-     */ 
-    public void setMinDistance(int minDistance){
-        this.minDistance = minDistance;
-    }
-
-    /*
-     * @return the locations array for wordA 
-     */ 
-    public ArrayList<Integer> getArrayListA(){
-        return this.wordALocations;
-    }
-
-    /*
-     * @return the locations array for wordB
-     */ 
-    public ArrayList<Integer> getArrayListB(){
-        return this.wordBLocations;
-    }
-
-    /*
-     * Adds location to the end of arrayListA
-     */
-    public void addOccurrenceA(int a){
-        this.wordALocations.add(a);
-    }
-
-    /*
-     * Adds location to the end of arrayListB
-     */
-    public void addOccurrenceB(int b){
-        this.wordBLocations.add(b);
-    }
-    
-    /*
-     * compareTo for Collections.sort() to work in topTenSearch
-     * 
-     * @return the value 0 is the argument @other equals this.  A
-     * value less than 0 is this.getMinDistance() is less than 
-     * other.getMinDistance(). A value greater than 0 is this.getMinDistance()
-     * is greater than other.getMinDistance()
-     */ 
-	public int compareTo (MovieSearchResult other){
-        int  selfMin = minDistance;
-        int otherMin = other.getMinDistance();
-        if ( selfMin == -1 )   selfMin = Integer.MAX_VALUE;
-        if ( otherMin == -1 ) otherMin = Integer.MAX_VALUE;
-        
-		return selfMin - otherMin;
-	}
-}
+package searchengine;
+
+import java.util.ArrayList;
+
+/*
+ * This class represents the distance between two searched words from the same movie description.
+ * The searched words are referred as wordA and wordB.
+ *
+ * The locations of each word are kept as a slice [start, end) of an int array. The slice
+ * set by setOccurrencesA/B is not copied; addOccurrenceA/B copy it into an array of this
+ * object before appending.
+ *
+ * Results created by the search engine refer to their movie by id (see DocumentTable),
+ * and the title is only looked up when getTitle() is called.
+ *
+ * Results of a scored search (see HybridScorer) also hold a score, and are ordered by
+ * decreasing score instead of increasing distance.
+ */
+public class MovieSearchResult implements Comparable<MovieSearchResult> {
+
+    private static final int[] NO_LOCATIONS = new int[0];
+
+    private int    docId;                      // id of the movie, -1 if unknown
+    private String title;                      // title of the movie, null until looked up
+    private DocumentTable documents;           // resolves docId to the title
+    private int    minDistance;                // the minimum distance between two locations of wordA and wordB
+    private double score;                      // the result's score, -1 if it is not scored
+    private int[]  wordALocations;             // holds wordA's locations in the movie's description.
+    private int    startA, endA;               // wordA's locations are wordALocations[startA, endA)
+    private boolean sharedA;                   // true if wordALocations belongs to someone else
+    private int[]  wordBLocations;             // holds wordB's locations int the movie's description.
+    private int    startB, endB;               // wordB's locations are wordBLocations[startB, endB)
+    private boolean sharedB;                   // true if wordBLocations belongs to someone else
+
+    public MovieSearchResult (String title) {
+        this(-1, null);
+        this.title = title;
+    }
+
+    public MovieSearchResult (int docId, DocumentTable documents) {
+        this.docId       = docId;
+        this.documents   = documents;
+        this.minDistance = -1;
+        this.score       = -1;
+        this.wordALocations  = NO_LOCATIONS;
+        this.wordBLocations  = NO_LOCATIONS;
+        this.sharedA = true;
+        this.sharedB = true;
+    }
+
+    /*
+     * @return a copy of this result. The copy shares the locations arrays, which
+     * addOccurrenceA/B copy before appending, so changing either result leaves the
+     * other as it is.
+     */
+    public MovieSearchResult copy(){
+        MovieSearchResult c = new MovieSearchResult(docId, documents);
+        c.title       = title;
+        c.minDistance = minDistance;
+        c.score       = score;
+        c.setOccurrencesA(wordALocations, startA, endA);
+        c.setOccurrencesB(wordBLocations, startB, endB);
+        return c;
+    }
+
+    /*
+     * @return the id of the movie, or -1 if the result was created from a title
+     */
+    public int getDocId(){
+        return this.docId;
+    }
+
+    /*
+     * @return movie title
+     */
+    public String getTitle(){
+        if ( title == null && documents != null ) {
+            title = documents.getTitle(docId);
+        }
+        return this.title;
+    }
+
+    /*
+     * Updates the title
+     * @title the movie's title that this object refers to
+     */
+    public void setTitle(String title){
+        this.title = title;
+    }
+
+    /*
+     * @return the shortest distance between the words, wordA and wordB
+     */
+    public int getMinDistance(){
+        return this.minDistance;
+    }
+
+    /*
+     * Updates the minimum distance betwee the words wordA and wordB
+     */
+    public void setMinDistance(int minDistance){
+        this.minDistance = minDistance;
+    }
+
+    /*
+     * @return the result's score, higher is better, or -1 if it is not scored
+     */
+    public double getScore(){
+        return this.score;
+    }
+
+    /*
+     * Updates the result's score
+     * @param score the score, >= 0
+     */
+    public void setScore(double score){
+        this.score = score;
+    }
+
+    /*
+     * @return a new list holding the locations for wordA
+     */
+    public ArrayList<Integer> getArrayListA(){
+        return toList(wordALocations, startA, endA);
+    }
+
+    /*
+     * @return a new list holding the locations for wordB
+     */
+    public ArrayList<Integer> getArrayListB(){
+        return toList(wordBLocations, startB, endB);
+    }
+
+    /*
+     * @return the array holding wordA's locations, from getStartA() to getEndA()
+     */
+    public int[] getLocationsA(){
+        return wordALocations;
+    }
+
+    /*
+     * @return index in getLocationsA() of wordA's first location
+     */
+    public int getStartA(){
+        return startA;
+    }
+
+    /*
+     * @return index in getLocationsA() after wordA's last location
+     */
+    public int getEndA(){
+        return endA;
+    }
+
+    /*
+     * @return the array holding wordB's locations, from getStartB() to getEndB()
+     */
+    public int[] getLocationsB(){
+        return wordBLocations;
+    }
+
+    /*
+     * @return index in getLocationsB() of wordB's first location
+     */
+    public int getStartB(){
+        return startB;
+    }
+
+    /*
+     * @return index in getLocationsB() after wordB's last location
+     */
+    public int getEndB(){
+        return endB;
+    }
+
+    /*
+     * Sets wordA's locations to locations[start, end). The array is not copied.
+     */
+    public void setOccurrencesA(int[] locations, int start, int end){
+        this.wordALocations = locations;
+        this.startA  = start;
+        this.endA    = end;
+        this.sharedA = true;
+    }
+
+    /*
+     * Sets wordB's locations to locations[start, end). The array is not copied.
+     */
+    public void setOccurrencesB(int[] locations, int start, int end){
+        this.wordBLocations = locations;
+        this.startB  = start;
+        this.endB    = end;
+        this.sharedB = true;
+    }
+
+    /*
+     * Adds location to the end of arrayListA
+     */
+    public void addOccurrenceA(int a){
+        if ( sharedA || endA == wordALocations.length ) {
+            wordALocations = copy(wordALocations, startA, endA);
+            endA   -= startA;
+            startA  = 0;
+            sharedA = false;
+        }
+        wordALocations[endA++] = a;
+    }
+
+    /*
+     * Adds location to the end of arrayListB
+     */
+    public void addOccurrenceB(int b){
+        if ( sharedB || endB == wordBLocations.length ) {
+            wordBLocations = copy(wordBLocations, startB, endB);
+            endB   -= startB;
+            startB  = 0;
+            sharedB = false;
+        }
+        wordBLocations[endB++] = b;
+    }
+
+    /*
+     * @return a private copy of a[start, end) with room to append
+     */
+    private static int[] copy(int[] a, int start, int end){
+        int[] c = new int[Math.max(4, (end - start) * 2)];
+        System.arraycopy(a, start, c, 0, end - start);
+        return c;
+    }
+
+    private static ArrayList<Integer> toList(int[] a, int start, int end){
+        ArrayList<Integer> list = new ArrayList<Integer>(end - start);
+        for ( int i = start; i < end; i++ ) {
+            list.add(a[i]);
+        }
+        return list;
+    }
+
+    /*
+     * compareTo for Collections.sort() to work in topTenSearch
+     *
+     * If both results are scored, the one with the higher score comes first.
+     * Otherwise: the value 0 is the argument @other equals this.  A
+     * value less than 0 is this.getMinDistance() is less than
+     * other.getMinDistance(). A value greater than 0 is this.getMinDistance()
+     * is greater than other.getMinDistance()
+     */
+	public int compareTo (MovieSearchResult other){
+        if ( score != -1 && other.getScore() != -1 && score != other.getScore() ) {
+            return Double.compare(other.getScore(), score);
+        }
+        int  selfMin = minDistance;
+        int otherMin = other.getMinDistance();
+        if ( selfMin == -1 )   selfMin = Integer.MAX_VALUE;
+        if ( otherMin == -1 ) otherMin = Integer.MAX_VALUE;
+
+		return selfMin - otherMin;
+	}
+}
@@ -0,0 +1,130 @@
+package searchengine;
+
+/*
+ * This class encodes blocks of BLOCK_SIZE non-negative ints with patched frame of
+ * reference (PForDelta).
+ *
+ * A block is written as one byte holding the bit width b, one byte holding the number
+ * of exceptions, the low b bits of every value packed into BLOCK_SIZE * b / 8 bytes,
+ * and then for every exception (a value that needs more than b bits) its index in the
+ * block and its remaining high bits as a variable-byte int. b is chosen to minimize the
+ * size of the block, so a few large values do not widen the whole block.
+ */
+public class PForCodec {
+
+	public static final int BLOCK_SIZE = 128;
+
+	/* an upper bound of the size of an encoded block */
+	public static final int MAX_BLOCK_BYTES = 2 + BLOCK_SIZE * 4 + BLOCK_SIZE * 6;
+
+	/*
+	 * Encodes @values[0, BLOCK_SIZE) into @out starting at @offset. @out must have room
+	 * for MAX_BLOCK_BYTES.
+	 * @return the offset after the block
+	 */
+	public static int encode ( int[] values, byte[] out, int offset ) {
+		int[] widths = new int[33];
+		for ( int i = 0; i < BLOCK_SIZE; i++ ) {
+			widths[32 - Integer.numberOfLeadingZeros(values[i])]++;
+		}
+
+		// exceptions cost an index byte and about two bytes of high bits
+		int best = 32, bestCost = Integer.MAX_VALUE, exceptions = 0;
+		for ( int b = 32; b >= 0; b-- ) {
+			int cost = BLOCK_SIZE * b / 8 + exceptions * 3;
+			if ( cost < bestCost ) {
+				bestCost = cost;
+				best = b;
+			}
+			exceptions += widths[b];
+		}
+		int b = best;
+
+		out[offset++] = (byte) b;
+		int exceptionCount = offset++;
+		long mask = b == 32 ? 0xFFFFFFFFL : (1L << b) - 1;
+		long acc = 0;
+		int bits = 0;
+		for ( int i = 0; i < BLOCK_SIZE; i++ ) {
+			acc |= (values[i] & mask) << bits;
+			bits += b;
+			while ( bits >= 8 ) {
+				out[offset++] = (byte) acc;
+				acc >>>= 8;
+				bits -= 8;
+			}
+		}
+
+		int count = 0;
+		for ( int i = 0; b < 32 && i < BLOCK_SIZE; i++ ) {
+			if ( (values[i] >>> b) != 0 ) {
+				out[offset++] = (byte) i;
+				offset = writeVInt(values[i] >>> b, out, offset);
+				count++;
+			}
+		}
+		out[exceptionCount] = (byte) count;
+		return offset;
+	}
+
+	/*
+	 * Decodes the block starting at @in[@offset] into @values[0, BLOCK_SIZE).
+	 * @return the offset after the block
+	 */
+	public static int decode ( byte[] in, int offset, int[] values ) {
+		int b     = in[offset++];
+		int count = in[offset++] & 0xFF;
+		long mask = b == 32 ? 0xFFFFFFFFL : (1L << b) - 1;
+
+		// every 8 values take b bytes; up to 8 bits wide they are read from a single long
+		for ( int i = 0; i < BLOCK_SIZE; i += 8 ) {
+			if ( b <= 8 ) {
+				long group = 0;
+				for ( int k = 0; k < b; k++ ) {
+					group |= (in[offset + k] & 0xFFL) << (k << 3);
+				}
+				for ( int k = 0; k < 8; k++ ) {
+					values[i + k] = (int) (group & mask);
+					group >>>= b;
+				}
+			} else {
+				long acc = 0;
+				int bits = 0;
+				int o = offset;
+				for ( int k = 0; k < 8; k++ ) {
+					while ( bits < b ) {
+						acc |= (in[o++] & 0xFFL) << bits;
+						bits += 8;
+					}
+					values[i + k] = (int) (acc & mask);
+					acc >>>= b;
+					bits -= b;
+				}
+			}
+			offset += b;
+		}
+
+		for ( int e = 0; e < count; e++ ) {
+			int i = in[offset++] & 0xFF;
+			int high = 0;
+			byte x;
+			int shift = 0;
+			do {
+				x = in[offset++];
+				high |= (x & 0x7F) << shift;
+				shift += 7;
+			} while ( x < 0 );
+			values[i] |= high << b;
+		}
+		return offset;
+	}
+
+	private static int writeVInt ( int v, byte[] out, int offset ) {
+		while ( (v & ~0x7F) != 0 ) {
+			out[offset++] = (byte) ((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		out[offset++] = (byte) v;
+		return offset;
+	}
+}
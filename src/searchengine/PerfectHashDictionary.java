@@ -0,0 +1,202 @@
+package searchengine;
+
+/*
+ * This class is an immutable word -> WordOccurrence map built on a minimal perfect hash
+ * function, following BBHash (Limasset et al., "Fast and scalable minimal perfect
+ * hashing for massive key sets").
+ *
+ * The words are placed in levels. Each level is a bit array GAMMA times larger than the
+ * number of words that reach it; every word hashes to one bit per level, and a word
+ * stays on the first level where no other word hashed to the same bit. The perfect hash
+ * of a word is the number of set bits before its bit, over all levels, so the n words
+ * map to exactly the slots 0..n-1 of the terms array: there are no empty slots.
+ *
+ * A lookup hashes the word once, tests one bit per level until it finds a set one
+ * (almost always on the first or second level), and then checks a 32-bit fingerprint
+ * and the word itself in the single slot it maps to. Words that are not in the
+ * dictionary either hit no set bit or fail that check.
+ *
+ * All fields are final and never modified after construction, so the dictionary can be
+ * shared by any number of threads without synchronization.
+ */
+public class PerfectHashDictionary {
+
+	private static final double GAMMA      = 2.0; // bits per word on every level
+	private static final int    MAX_LEVELS = 32;
+
+	private final long[] bits;          // the levels' bit arrays, one after the other
+	private final int[]  levelStart;    // index of each level's first word in bits
+	private final int[]  levelSize;     // number of bits of each level
+	private final int[]  ranks;         // ranks[i] = number of set bits in bits[0..i)
+	private final int    levels;
+
+	private final WordOccurrence[] terms;        // perfect hash -> WordOccurrence
+	private final int[]            fingerprints; // perfect hash -> low 32 bits of hash64
+	private final WordOccurrence[] overflow;     // words left after MAX_LEVELS, normally none
+
+	/*
+	 * Builds the perfect hash function over @words.
+	 *
+	 * @param words the words of the dictionary, each word at most once
+	 */
+	public PerfectHashDictionary ( WordOccurrence[] words ) {
+
+		long[] keys = new long[words.length];
+		int[]  remaining = new int[words.length];
+		for ( int i = 0; i < words.length; i++ ) {
+			String w = words[i].getWord();
+			keys[i] = TermDictionary.hash64(w, 0, w.length());
+			remaining[i] = i;
+		}
+		int left = words.length;
+
+		long[][] levelBits = new long[MAX_LEVELS][];
+		int level = 0;
+		while ( left > 0 && level < MAX_LEVELS ) {
+			int size = (int) Math.min(Integer.MAX_VALUE - 63, Math.max(64, (long) Math.ceil(left * GAMMA)));
+			size = (size + 63) & ~63;
+			long[] seen    = new long[size >>> 6];
+			long[] collide = new long[size >>> 6];
+
+			for ( int k = 0; k < left; k++ ) {
+				int p = position(keys[remaining[k]], level, size);
+				if ( (seen[p >>> 6] & (1L << p)) != 0 ) {
+					collide[p >>> 6] |= 1L << p;
+				} else {
+					seen[p >>> 6] |= 1L << p;
+				}
+			}
+
+			int next = 0;
+			for ( int k = 0; k < left; k++ ) {
+				int p = position(keys[remaining[k]], level, size);
+				if ( (collide[p >>> 6] & (1L << p)) != 0 ) {
+					remaining[next++] = remaining[k];
+				}
+			}
+			for ( int w = 0; w < seen.length; w++ ) {
+				seen[w] &= ~collide[w];
+			}
+			levelBits[level++] = seen;
+			left = next;
+		}
+
+		this.levels     = level;
+		this.levelStart = new int[level];
+		this.levelSize  = new int[level];
+		int words64 = 0;
+		for ( int l = 0; l < level; l++ ) {
+			levelStart[l] = words64;
+			levelSize[l]  = levelBits[l].length << 6;
+			words64 += levelBits[l].length;
+		}
+		this.bits  = new long[words64];
+		this.ranks = new int[words64 + 1];
+		for ( int l = 0; l < level; l++ ) {
+			System.arraycopy(levelBits[l], 0, bits, levelStart[l], levelBits[l].length);
+		}
+		for ( int w = 0; w < words64; w++ ) {
+			ranks[w + 1] = ranks[w] + Long.bitCount(bits[w]);
+		}
+
+		int placed = words.length - left;
+		this.terms        = new WordOccurrence[placed];
+		this.fingerprints = new int[placed];
+		boolean[] isPlaced = new boolean[words.length];
+		for ( int i = 0; i < words.length; i++ ) {
+			int slot = indexOf(keys[i]);
+			if ( slot >= 0 && terms[slot] == null ) {
+				terms[slot]        = words[i];
+				fingerprints[slot] = (int) keys[i];
+				isPlaced[i] = true;
+			}
+		}
+		this.overflow = new WordOccurrence[left];
+		for ( int i = 0, o = 0; i < words.length; i++ ) {
+			if ( !isPlaced[i] ) {
+				overflow[o++] = words[i];
+			}
+		}
+	}
+
+	/*
+	 * @return the number of words in the dictionary
+	 */
+	public int size () {
+		return terms.length + overflow.length;
+	}
+
+	/*
+	 * Returns the word with perfect hash @slot, or one of the overflow words for
+	 * slot >= the number of hashed words.
+	 *
+	 * @param slot 0 <= slot < size()
+	 * @return the WordOccurrence at @slot
+	 */
+	public WordOccurrence getSlot ( int slot ) {
+		return slot < terms.length ? terms[slot] : overflow[slot - terms.length];
+	}
+
+	/*
+	 * Finds the WordOccurrence for the word in @word[start, end), ignoring case.
+	 *
+	 * @return the WordOccurrence of the word, or null if it is not in the dictionary
+	 */
+	public WordOccurrence get ( CharSequence word, int start, int end ) {
+		long key  = TermDictionary.hash64(word, start, end);
+		int  slot = indexOf(key);
+		if ( slot >= 0 && fingerprints[slot] == (int) key
+				&& TermDictionary.matches(terms[slot].getWord(), word, start, end) ) {
+			return terms[slot];
+		}
+		for ( WordOccurrence occ : overflow ) {
+			if ( TermDictionary.matches(occ.getWord(), word, start, end) ) {
+				return occ;
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * Finds the WordOccurrence for the word in @word[offset, offset+length), ignoring case.
+	 *
+	 * @return the WordOccurrence of the word, or null if it is not in the dictionary
+	 */
+	public WordOccurrence get ( char[] word, int offset, int length ) {
+		long key  = TermDictionary.hash64(word, offset, length);
+		int  slot = indexOf(key);
+		if ( slot >= 0 && fingerprints[slot] == (int) key
+				&& TermDictionary.matches(terms[slot].getWord(), word, offset, length) ) {
+			return terms[slot];
+		}
+		for ( WordOccurrence occ : overflow ) {
+			if ( TermDictionary.matches(occ.getWord(), word, offset, length) ) {
+				return occ;
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * @return the perfect hash of @key, or -1 if @key hits no set bit on any level
+	 */
+	private int indexOf ( long key ) {
+		for ( int l = 0; l < levels; l++ ) {
+			int p = position(key, l, levelSize[l]);
+			int w = levelStart[l] + (p >>> 6);
+			long mask = 1L << p;
+			if ( (bits[w] & mask) != 0 ) {
+				return ranks[w] + Long.bitCount(bits[w] & (mask - 1));
+			}
+		}
+		return -1;
+	}
+
+	/*
+	 * Maps @key to a bit of a level with @size bits; every level uses its own hash.
+	 */
+	private static int position ( long key, int level, int size ) {
+		long h = TermDictionary.mix64(key + (level + 1) * 0x9E3779B97F4A7C15L);
+		return (int) (((h >>> 32) * size) >>> 32);
+	}
+}
@@ -0,0 +1,237 @@
+package searchengine;
+
+/*
+ * This class streams the postings of a WordOccurrence, one movie at a time.
+ *
+ * The movies are decoded a block at a time (see WordOccurrence for the layout) into
+ * arrays of ids and frequencies that are reused for every block. advance() uses the
+ * skip data to jump over every block whose last movie id is below its target without
+ * decoding it, so intersecting a rare word with a frequent one only decodes the blocks
+ * of the frequent word that may hold a match (see DocIntersection).
+ *
+ * The positions of the current movie are only decoded when positions() is called, into
+ * a buffer that is reused for every movie; the positions of the movies passed over are
+ * skipped by counting the last bytes of their gaps. A cursor can be reset() to another
+ * word so that a search does not allocate one per query.
+ *
+ * A cursor is the leaf of the DocIterator trees of boolean queries.
+ */
+public class PostingsCursor extends DocIterator {
+
+	private byte[] blockData;      // the word's encoded blocks
+	private int[]  skipData;       // the word's skip data
+	private int    blockCount;     // the word's number of full blocks
+	private int[]  tail;           // the word's movies after the full blocks
+	private int    tailCount;      // number of movies in tail
+	private byte[] positionData;   // the word's encoded positions
+	private int    docCount;       // the word's number of movies
+
+	private int    block;          // current block, blockCount for the tail
+	private int[]  docs;           // movie ids of the current block
+	private int[]  freqs;          // frequencies of the current block
+	private int    count;          // number of movies in the current block
+	private int    index;          // current movie in the current block
+	private int    doc;            // current movie id, -1 before the first nextDoc()
+
+	private int    positionOffset; // start in positionData of the positions of movie positionDoc
+	private int    positionDoc;    // index in the current block of the next movie to decode
+	private int[]  positions;      // the current movie's positions
+
+	public PostingsCursor () {
+		this.docs      = new int[PForCodec.BLOCK_SIZE];
+		this.freqs     = new int[PForCodec.BLOCK_SIZE];
+		this.positions = new int[16];
+		this.doc       = NO_MORE_DOCS;
+	}
+
+	public PostingsCursor ( WordOccurrence occ ) {
+		this();
+		reset(occ);
+	}
+
+	/*
+	 * Positions the cursor before the first movie of @occ.
+	 * @return this cursor
+	 */
+	public PostingsCursor reset ( WordOccurrence occ ) {
+		this.blockData    = occ.getBlockData();
+		this.skipData     = occ.getSkipData();
+		this.blockCount   = occ.getBlockCount();
+		this.tail         = occ.getTail();
+		this.tailCount    = occ.getTailCount();
+		this.positionData = occ.getPositions();
+		this.docCount     = occ.getDocumentCount();
+		this.block = -1;
+		this.count = 0;
+		this.index = -1;
+		this.doc   = -1;
+		return this;
+	}
+
+	/*
+	 * @return the current movie id, -1 before the first nextDoc(), NO_MORE_DOCS at the end
+	 */
+	public int docId () {
+		return doc;
+	}
+
+	/*
+	 * Moves to the next movie.
+	 * @return the movie's id, or NO_MORE_DOCS if there are no more movies
+	 */
+	public int nextDoc () {
+		if ( doc == NO_MORE_DOCS ) {
+			return doc;
+		}
+		if ( ++index == count ) {
+			if ( !loadBlock(block + 1) ) {
+				doc = NO_MORE_DOCS;
+				return doc;
+			}
+			index = 0;
+		}
+		doc = docs[index];
+		return doc;
+	}
+
+	/*
+	 * Moves to the first movie whose id is >= @target. The block holding it is found by
+	 * an exponential then binary search of the skip data, and the movie by the same
+	 * search in the block, so advancing far costs a logarithm of the distance.
+	 * @return the movie's id, or NO_MORE_DOCS if there is none
+	 */
+	public int advance ( int target ) {
+		if ( doc >= target ) {
+			return doc;
+		}
+		if ( count == 0 || docs[count - 1] < target ) {
+			int lo = block + 1, hi = lo, step = 1;
+			while ( hi < blockCount && skipData[3 * hi] < target ) {
+				lo    = hi + 1;
+				hi   += step;
+				step <<= 1;
+			}
+			hi = Math.min(hi, blockCount);
+			while ( lo < hi ) {
+				int mid = (lo + hi) >>> 1;
+				if ( skipData[3 * mid] < target ) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+			if ( !loadBlock(lo) || docs[count - 1] < target ) {
+				doc = NO_MORE_DOCS;
+				return doc;
+			}
+			index = -1;
+		}
+
+		// docs[count - 1] >= target, so the search ends in this block
+		int lo = index + 1, hi = lo, step = 1;
+		while ( docs[hi] < target ) {
+			lo    = hi + 1;
+			hi    = Math.min(hi + step, count - 1);
+			step <<= 1;
+		}
+		while ( lo < hi ) {
+			int mid = (lo + hi) >>> 1;
+			if ( docs[mid] < target ) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		index = lo;
+		doc   = docs[index];
+		return doc;
+	}
+
+	/*
+	 * @return the number of movies of the word
+	 */
+	public long cost () {
+		return docCount;
+	}
+
+	/*
+	 * @return the number of positions of the word in the current movie
+	 */
+	public int freq () {
+		return freqs[index];
+	}
+
+	/*
+	 * Returns the positions of the word in the current movie, in increasing order. The
+	 * array is reused by the next movie; only the first freq() entries are valid.
+	 * @return the positions buffer
+	 */
+	public int[] positions () {
+		if ( positionDoc > index ) {
+			return positions;
+		}
+
+		int skip = 0;
+		for ( int i = positionDoc; i < index; i++ ) {
+			skip += freqs[i];
+		}
+		int offset = positionOffset;
+		while ( skip > 0 ) {
+			if ( positionData[offset++] >= 0 ) {
+				skip--;
+			}
+		}
+
+		int freq = freqs[index];
+		if ( freq > positions.length ) {
+			positions = new int[Math.max(freq, positions.length * 2)];
+		}
+		int position = -1;
+		for ( int p = 0; p < freq; p++ ) {
+			byte b = positionData[offset++];
+			int  v = b & 0x7F;
+			for ( int shift = 7; b < 0; shift += 7 ) {
+				b  = positionData[offset++];
+				v |= (b & 0x7F) << shift;
+			}
+			position += v;
+			positions[p] = position;
+		}
+
+		positionOffset = offset;
+		positionDoc    = index + 1;
+		return positions;
+	}
+
+	/*
+	 * Decodes block @b (the tail if @b == blockCount) into docs and freqs.
+	 * @return false if there is no such block
+	 */
+	private boolean loadBlock ( int b ) {
+		block = b;
+		count = 0;
+		positionDoc = 0;
+		if ( b < blockCount ) {
+			int offset = b == 0 ? 0 : skipData[3 * b - 2];
+			offset = PForCodec.decode(blockData, offset, docs);
+			PForCodec.decode(blockData, offset, freqs);
+			int previous = b == 0 ? -1 : skipData[3 * b - 3];
+			for ( int i = 0; i < PForCodec.BLOCK_SIZE; i++ ) {
+				previous += docs[i] + 1;
+				docs[i]   = previous;
+				freqs[i]++;
+			}
+			count = PForCodec.BLOCK_SIZE;
+		} else if ( b == blockCount && tailCount > 0 ) {
+			for ( int i = 0; i < tailCount; i++ ) {
+				docs[i]  = tail[2 * i];
+				freqs[i] = tail[2 * i + 1];
+			}
+			count = tailCount;
+		} else {
+			return false;
+		}
+		positionOffset = b == 0 ? 0 : skipData[3 * b - 1];
+		return true;
+	}
+}
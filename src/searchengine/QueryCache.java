@@ -0,0 +1,323 @@
+package searchengine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/*
+ * This class is a bounded cache of search results, keyed by the normalized query,
+ * with W-TinyLFU admission and eviction (Einziger et al., "TinyLFU: A Highly Efficient
+ * Cache Admission Policy").
+ *
+ * New entries go to a small LRU window, about 1% of the capacity. An entry leaving the
+ * window only enters the main area, a segmented LRU, if it has been asked for more
+ * often than the main area's next victim; otherwise it is the one evicted. So a burst
+ * of one-off queries cannot flush the queries that keep coming back. How often a
+ * query has been asked for is estimated by a count-min sketch of 4-bit counters, 4 per
+ * query, which are all halved every 10 * capacity queries so that old popularity
+ * fades. The main area is split into a probation segment and a protected segment,
+ * 80% of it, that entries reach when they are hit a second time.
+ *
+ * Each entry remembers its words, and invalidate(word) drops exactly the entries of
+ * queries on that word. Every method is synchronized, except that invalidate() returns
+ * without taking the monitor while the cache is empty, as it is while movies are
+ * loaded, so writers inserting locations do not queue on it.
+ */
+public class QueryCache {
+
+	private static final int WINDOW    = 0;
+	private static final int PROBATION = 1;
+	private static final int PROTECTED = 2;
+
+	private final int windowCapacity;
+	private final int protectedCapacity;
+	private final int mainCapacity;
+
+	private final HashMap<String, Node> entries;
+	private final HashMap<String, HashSet<Node>> byWord;  // word -> entries of its queries
+	private final Node[] lists;                           // sentinel of each segment's LRU list
+	private final int[]  sizes;                           // number of entries of each segment
+
+	private final long[] sketch;      // 4 rows of 4-bit counters, 16 per long
+	private final int    sketchMask;  // counters per row - 1
+	private final int    sampleSize;  // increments between two halvings
+	private int          increments;  // increments since the last halving
+
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long invalidations;
+	private volatile int count;   // entries.size(), read by invalidate() without the monitor
+
+	/*
+	 * @param capacity the number of queries kept, >= 1
+	 */
+	public QueryCache ( int capacity ) {
+		if ( capacity < 1 ) {
+			throw new IllegalArgumentException("capacity must be >= 1: " + capacity);
+		}
+		this.windowCapacity    = Math.max(1, capacity / 100);
+		this.mainCapacity      = capacity - windowCapacity;
+		this.protectedCapacity = (int) (mainCapacity * 0.8);
+		this.entries = new HashMap<String, Node>();
+		this.byWord  = new HashMap<String, HashSet<Node>>();
+		this.lists   = new Node[3];
+		this.sizes   = new int[3];
+		for ( int s = 0; s < 3; s++ ) {
+			lists[s] = new Node(null, null, null);
+			lists[s].prev = lists[s].next = lists[s];
+		}
+
+		int width = Integer.highestOneBit(Math.max(16, capacity) - 1) << 1;
+		this.sketch     = new long[4 * width / 16];
+		this.sketchMask = width - 1;
+		this.sampleSize = 10 * capacity;
+	}
+
+	/*
+	 * @return the key of the query of @words and @k, ignoring the words' case
+	 */
+	public static String key ( String[] words, int k ) {
+		StringBuilder key = new StringBuilder();
+		for ( String word : words ) {
+			key.append(word.toLowerCase()).append(' ');
+		}
+		return key.append(k).toString();
+	}
+
+	/*
+	 * Counts a request for @key.
+	 * @return the results kept for @key, or null if there are none
+	 */
+	public synchronized ArrayList<MovieSearchResult> get ( String key ) {
+		increment(key.hashCode());
+		Node node = entries.get(key);
+		if ( node == null ) {
+			misses++;
+			return null;
+		}
+		hits++;
+		if ( node.segment == PROBATION ) {
+			unlink(node);
+			link(node, PROTECTED);
+			if ( sizes[PROTECTED] > protectedCapacity ) {
+				Node demoted = lists[PROTECTED].next;
+				unlink(demoted);
+				link(demoted, PROBATION);
+			}
+		} else {
+			int segment = node.segment;
+			unlink(node);
+			link(node, segment);
+		}
+		return node.results;
+	}
+
+	/*
+	 * Keeps @results for @key, a query on @words, evicting another query if the cache
+	 * is full (possibly this one).
+	 */
+	public synchronized void put ( String key, String[] words, ArrayList<MovieSearchResult> results ) {
+		Node node = entries.get(key);
+		if ( node != null ) {
+			node.results = results;
+			return;
+		}
+		String[] lower = new String[words.length];
+		for ( int i = 0; i < words.length; i++ ) {
+			lower[i] = words[i].toLowerCase();
+		}
+		node = new Node(key, lower, results);
+		entries.put(key, node);
+		count = entries.size();
+		for ( String word : lower ) {
+			HashSet<Node> nodes = byWord.get(word);
+			if ( nodes == null ) {
+				byWord.put(word, nodes = new HashSet<Node>());
+			}
+			nodes.add(node);
+		}
+		link(node, WINDOW);
+		if ( sizes[WINDOW] <= windowCapacity ) {
+			return;
+		}
+
+		Node candidate = lists[WINDOW].next;
+		unlink(candidate);
+		if ( sizes[PROBATION] + sizes[PROTECTED] < mainCapacity ) {
+			link(candidate, PROBATION);
+			return;
+		}
+		Node victim = sizes[PROBATION] > 0 ? lists[PROBATION].next : lists[PROTECTED].next;
+		if ( frequency(candidate.key.hashCode()) > frequency(victim.key.hashCode()) ) {
+			unlink(victim);
+			remove(victim);
+			link(candidate, PROBATION);
+		} else {
+			remove(candidate);
+		}
+		evictions++;
+	}
+
+	/*
+	 * Drops the results of every query on @word, whose postings changed.
+	 * @param word the word in lower case, as WordOccurrence.getWord() holds it
+	 */
+	public void invalidate ( String word ) {
+		if ( count == 0 ) {
+			return;
+		}
+		synchronized ( this ) {
+			HashSet<Node> nodes = byWord.get(word);
+			if ( nodes == null ) {
+				return;
+			}
+			for ( Node node : nodes.toArray(new Node[nodes.size()]) ) {
+				unlink(node);
+				remove(node);
+				invalidations++;
+			}
+		}
+	}
+
+	/*
+	 * Drops every query.
+	 */
+	public synchronized void clear () {
+		invalidations += entries.size();
+		entries.clear();
+		byWord.clear();
+		count = 0;
+		for ( int s = 0; s < 3; s++ ) {
+			lists[s].prev = lists[s].next = lists[s];
+			sizes[s] = 0;
+		}
+	}
+
+	/*
+	 * @return the number of queries kept
+	 */
+	public synchronized int size () {
+		return entries.size();
+	}
+
+	/*
+	 * @return the number of get() calls that found results
+	 */
+	public synchronized long getHitCount () {
+		return hits;
+	}
+
+	/*
+	 * @return the number of get() calls that found none
+	 */
+	public synchronized long getMissCount () {
+		return misses;
+	}
+
+	/*
+	 * @return the number of queries dropped, or not admitted, to make room
+	 */
+	public synchronized long getEvictionCount () {
+		return evictions;
+	}
+
+	/*
+	 * @return the number of queries dropped by invalidate() and clear()
+	 */
+	public synchronized long getInvalidationCount () {
+		return invalidations;
+	}
+
+	/*
+	 * Removes @node, already unlinked, from the maps.
+	 */
+	private void remove ( Node node ) {
+		entries.remove(node.key);
+		count = entries.size();
+		for ( String word : node.words ) {
+			HashSet<Node> nodes = byWord.get(word);
+			if ( nodes != null ) {
+				nodes.remove(node);
+				if ( nodes.isEmpty() ) {
+					byWord.remove(word);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Appends @node to the most recently used end of @segment.
+	 */
+	private void link ( Node node, int segment ) {
+		Node head = lists[segment];
+		node.prev = head.prev;
+		node.next = head;
+		head.prev.next = node;
+		head.prev = node;
+		node.segment = segment;
+		sizes[segment]++;
+	}
+
+	private void unlink ( Node node ) {
+		node.prev.next = node.next;
+		node.next.prev = node.prev;
+		node.prev = node.next = null;
+		sizes[node.segment]--;
+	}
+
+	/*
+	 * Increments the 4 counters of @hash, halving every counter once sampleSize
+	 * increments have been made.
+	 */
+	private void increment ( int hash ) {
+		for ( int row = 0; row < 4; row++ ) {
+			int i = counter(hash, row);
+			long shift = (i & 15) << 2;
+			if ( ((sketch[i >>> 4] >>> shift) & 15) < 15 ) {
+				sketch[i >>> 4] += 1L << shift;
+			}
+		}
+		if ( ++increments == sampleSize ) {
+			for ( int w = 0; w < sketch.length; w++ ) {
+				sketch[w] = (sketch[w] >>> 1) & 0x7777777777777777L;
+			}
+			increments /= 2;
+		}
+	}
+
+	/*
+	 * @return the estimated number of recent requests of @hash: its smallest counter
+	 */
+	private int frequency ( int hash ) {
+		int min = 15;
+		for ( int row = 0; row < 4; row++ ) {
+			int i = counter(hash, row);
+			min = Math.min(min, (int) ((sketch[i >>> 4] >>> ((i & 15) << 2)) & 15));
+		}
+		return min;
+	}
+
+	/*
+	 * @return the index of @hash's counter in @row, counting from the start of sketch
+	 */
+	private int counter ( int hash, int row ) {
+		int h = hash * (0x9E3779B9 + 2 * row);
+		h ^= h >>> 16;
+		return row * (sketchMask + 1) + (h & sketchMask);
+	}
+
+	private static class Node {
+		final String   key;
+		final String[] words;       // the query's words, in lower case
+		ArrayList<MovieSearchResult> results;
+		Node prev, next;            // neighbors in the segment's list
+		int  segment;
+
+		Node ( String key, String[] words, ArrayList<MovieSearchResult> results ) {
+			this.key     = key;
+			this.words   = words;
+			this.results = results;
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package searchengine;
+
+/*
+ * This class is a two word query, as given to topTenSearch(wordA, wordB), for
+ * RUMDbSearchEngine.searchBatch().
+ */
+public class QueryPair {
+
+	private final String wordA;   // the first word to search
+	private final String wordB;   // the second word to search
+
+	public QueryPair ( String wordA, String wordB ) {
+		this.wordA = wordA;
+		this.wordB = wordB;
+	}
+
+	/*
+	 * @return the first word to search
+	 */
+	public String getWordA () {
+		return wordA;
+	}
+
+	/*
+	 * @return the second word to search
+	 */
+	public String getWordB () {
+		return wordB;
+	}
+
+	public String toString () {
+		return "(" + wordA + ", " + wordB + ")";
+	}
+}
@@ -1,9 +1,17 @@
 package searchengine;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Stream;
 
 /*
  * This class builds a hash table of words from movies descriptions. Each word maps to a set
@@ -14,11 +22,31 @@ import java.util.Hashtable;
  * 
  */ 
 public class RUMDbSearchEngine {
+
+	// the table is open-addressed, so the load factor must stay well below 1
+	public static final double MAX_LOAD_FACTOR = 0.75;
+
+	// head room added to vocabulary estimates, HyperLogLog is off by ~1% on average
+	private static final double ESTIMATE_SLACK = 1.05;
+
+	// added to a fuzzy result's distance for every edit of its corrected words
+	public static final int FUZZY_PENALTY = 1;
+
+	// words added after the sorted dictionary was built that are kept as its delta, at least
+	private static final int MIN_SORTED_DELTA = 256;
     
 	private int    hashSize;   // the hash table size
 	private double threshold;  // load factor threshold. load factor = wordCount/hashSize
     private int    wordCount;  // the number of unique words in the table
-    private WordOccurrence[] hashTable;  // the hash table
+    private int    resizeCount; // the number of times the table grew in insertWordLocation
+    private TermDictionary hashTable;  // the hash table, null once frozen
+    private DocumentTable documents;   // movie ids and titles
+    private PerfectHashDictionary frozenTable; // replaces hashTable after freeze()
+    private volatile SortedTermDictionary sortedTerms; // the words in order, null until built
+    private ArrayList<WordOccurrence> addedWords;     // words added since sortedTerms was built
+    private SortedTermDictionary sortedView;          // sortedTerms with addedWords, null if stale
+    private int    fuzzyEdits; // edits accepted to correct a word that is not in the table
+    private QueryCache queryCache;     // results of recent topKSearch() calls, null if off
 
     private ArrayList<String> noiseWords; // noisewords are not to be inserted in the hash table
 
@@ -27,16 +55,38 @@ public class RUMDbSearchEngine {
 	 * 
 	 *  @param hashSize is the size for the hash table 
 	 * 	@param threshold for the hash table load factor. Rehash occurs when the ratio 
-	 * 	wordCount : hashSize exceeds the threshold.
+	 * 	wordCount : hashSize exceeds the threshold, which must be above 0 and at most
+	 * 	MAX_LOAD_FACTOR.
 	 *  @param noiseWordsFile contains words that will not be inserted into the hash table.
+	 *  @throws IllegalArgumentException if @threshold is not in (0, MAX_LOAD_FACTOR]
 	 */
 	public RUMDbSearchEngine (int hashSize, double threshold, String noiseWordsFile){
 
-		this.hashSize   = hashSize;
-		this.hashTable  = new WordOccurrence[hashSize];
+		this(threshold, noiseWordsFile);
+		this.hashTable  = new TermDictionary(hashSize);
+		this.hashSize   = hashTable.capacity();
+	}
+
+	/*
+	 * Constructor for subclasses that keep the words in a table of their own. No hash
+	 * table is built, so until freeze() a subclass must override every method that uses
+	 * it: getLoadFactor(), ensureCapacity(), the getWordOccurrence() lookups,
+	 * insertWordLocation(), insertMovies(), allWords() and print().
+	 *
+	 * 	@param threshold for the load factor, as in RUMDbSearchEngine(hashSize, threshold,
+	 * 	noiseWordsFile)
+	 *  @param noiseWordsFile contains words that will not be inserted into the hash table.
+	 *  @throws IllegalArgumentException if @threshold is not in (0, MAX_LOAD_FACTOR]
+	 */
+	protected RUMDbSearchEngine (double threshold, String noiseWordsFile){
+
+		checkThreshold(threshold);
+		this.addedWords = new ArrayList<WordOccurrence>();
         this.noiseWords = new ArrayList<String>();
 		this.threshold  = threshold;
         this.wordCount  = 0;
+        this.resizeCount = 0;
+        this.documents  = new DocumentTable();
 
         // Read noise words from file
         StdIn.setFile(noiseWordsFile);
@@ -48,14 +98,26 @@ public class RUMDbSearchEngine {
     }
 
 	/*
-	 * Method used to map a word into an array index.
+	 * Checks that @threshold can be used as the load factor threshold of an open-addressed
+	 * table.
+	 * @throws IllegalArgumentException if @threshold is not in (0, MAX_LOAD_FACTOR]
+	 */
+	private static void checkThreshold ( double threshold ) {
+		if ( !(threshold > 0 && threshold <= MAX_LOAD_FACTOR) ) {
+			throw new IllegalArgumentException("threshold must be above 0 and at most "
+				+ MAX_LOAD_FACTOR + ": " + threshold);
+		}
+	}
+
+	/*
+	 * Method used to compute a word's hash code. @hashTable maps the hash code into
+	 * a slot. The word is folded to lower case while hashing, nothing is allocated.
 	 * 
 	 * @param word the word
-	 * @return array index within @hashTable
+	 * @return the hash code of @word
 	 */
-	private int hashFunction ( String word ) {
-        int hashCode = Math.abs(word.toLowerCase().replaceAll("/[^a-z0-9]/","").hashCode());
-		return hashCode % hashSize;
+	private int hashFunction ( CharSequence word ) {
+        return TermDictionary.hash(word, 0, word.length());
 	}
 
 	/*
@@ -66,6 +128,204 @@ public class RUMDbSearchEngine {
 		return (double)wordCount/hashSize;
 	}
 
+	/*
+	 * Turns the engine into a read-only index. The hash table is replaced by a minimal
+	 * perfect hash over the words inserted so far (see PerfectHashDictionary), so every
+	 * lookup takes one probe and the table has no empty slots.
+	 * 
+	 * After freeze() the engine is never modified again: insertWordLocation() and
+	 * insertMoviesIntoHashTable() throw IllegalStateException, and searches can run on any
+	 * number of threads without synchronization once the engine has been handed to them
+	 * through a safe publication (a volatile field, a concurrent collection, an executor).
+	 * Calling freeze() again does nothing.
+	 */
+	public void freeze () {
+		if ( frozenTable != null ) {
+			return;
+		}
+		WordOccurrence[] words = allWords();
+		frozenTable = new PerfectHashDictionary(words);
+		sortWords(words);
+		hashTable   = null;
+		hashSize    = frozenTable.size();
+	}
+
+	/*
+	 * Returns the words of the table in sorted order, for prefix and wildcard patterns.
+	 * The dictionary is built with the table by insertMoviesIntoHashTable() and
+	 * freeze(), or on the first call if the movies were inserted otherwise. The words
+	 * added since are not sorted into it again: they are kept as the dictionary's delta
+	 * (see SortedTermDictionary.withAdded()) until there are more than
+	 * MIN_SORTED_DELTA of them and more than 1/64 of the words, when the dictionary is
+	 * built again.
+	 *
+	 * @return the sorted dictionary of the words inserted so far
+	 */
+	public synchronized SortedTermDictionary getSortedDictionary () {
+		SortedTermDictionary sorted = sortedTerms;
+		if ( sorted == null || addedWords.size() > Math.max(MIN_SORTED_DELTA, sorted.size() / 64) ) {
+			sortWords(allWords());
+		} else if ( sortedView == null ) {
+			sortedView = sorted.withAdded(addedWords.toArray(new WordOccurrence[addedWords.size()]));
+		}
+		return sortedView;
+	}
+
+	/*
+	 * Builds the sorted dictionary of @words, the words of the table, with no delta.
+	 */
+	private synchronized void sortWords ( WordOccurrence[] words ) {
+		sortedTerms = new SortedTermDictionary(words);
+		sortedView  = sortedTerms;
+		addedWords.clear();
+	}
+
+	/*
+	 * Adds @occ to the sorted dictionary's delta, called when a new word is added to
+	 * the table. Until the dictionary is first built there is nothing to do.
+	 */
+	protected void wordAdded ( WordOccurrence occ ) {
+		if ( sortedTerms == null ) {
+			return;
+		}
+		synchronized ( this ) {
+			addedWords.add(occ);
+			sortedView = null;
+		}
+	}
+
+	/*
+	 * Turns fuzzy matching on or off. When it is on, topTenSearch(wordA, wordB) and
+	 * topKSearch() correct a word that is not in the table to the words within @edits
+	 * edits of it, as fuzzySearch() does.
+	 *
+	 * @param edits the number of edits accepted, 0 (off) to LevenshteinAutomaton.MAX_EDITS
+	 */
+	public void setFuzzyEdits ( int edits ) {
+		if ( edits < 0 || edits > LevenshteinAutomaton.MAX_EDITS ) {
+			throw new IllegalArgumentException("edits must be between 0 and "
+					+ LevenshteinAutomaton.MAX_EDITS + ": " + edits);
+		}
+		fuzzyEdits = edits;
+	}
+
+	/*
+	 * @return the number of edits accepted to correct a word, 0 if fuzzy matching is off
+	 */
+	public int getFuzzyEdits () {
+		return fuzzyEdits;
+	}
+
+	/*
+	 * Turns the cache of topTenSearch(wordA, wordB) and topKSearch() results on or off.
+	 * The cache keeps copies of the results it is given and returns copies of them, so a
+	 * caller may modify the results of a cached query. Inserting a location of a word with insertWordLocation() drops the
+	 * queries on that word, and insertMoviesIntoHashTable() drops every query once the
+	 * movies are loaded.
+	 *
+	 * @param capacity the number of queries kept, 0 to turn the cache off
+	 */
+	public void setQueryCacheCapacity ( int capacity ) {
+		queryCache = capacity > 0 ? new QueryCache(capacity) : null;
+	}
+
+	/*
+	 * @return the query cache, for its counters, or null if it is off
+	 */
+	public QueryCache getQueryCache () {
+		return queryCache;
+	}
+
+	/*
+	 * Drops the cached queries on @word, called when a location of @word is inserted.
+	 * @param word the word as stored, in lower case (see WordOccurrence.getWord())
+	 */
+	protected void wordChanged ( String word ) {
+		QueryCache cache = queryCache;
+		if ( cache != null ) {
+			cache.invalidate(word);
+		}
+	}
+
+	/*
+	 * @return the table of movie ids and titles
+	 */
+	public DocumentTable getDocumentTable () {
+		return documents;
+	}
+
+	/*
+	 * @return true if freeze() has been called
+	 */
+	public boolean isFrozen () {
+		return frozenTable != null;
+	}
+
+	/*
+	 * @throws IllegalStateException if the engine has been frozen
+	 */
+	protected void checkNotFrozen () {
+		if ( frozenTable != null ) {
+			throw new IllegalStateException("the search engine is frozen");
+		}
+	}
+
+	/*
+	 * @return every WordOccurrence in the hash table
+	 */
+	protected WordOccurrence[] allWords () {
+		WordOccurrence[] words = new WordOccurrence[hashTable.size()];
+		for ( int i = 0; i < words.length; i++ ) {
+			words[i] = hashTable.getTerm(i);
+		}
+		return words;
+	}
+
+	/*
+	 * Returns the number of times the hash table grew because an insert pushed the
+	 * load factor above the threshold. Presizing through ensureCapacity() is not counted.
+	 * @return the number of resizes
+	 */
+	public int getResizeCount () {
+		return resizeCount;
+	}
+
+	/*
+	 * Grows the hash table so that @expectedWords unique words fit without crossing the
+	 * load factor threshold. Does nothing if the table is already large enough.
+	 * 
+	 * @param expectedWords the number of unique words expected to be inserted
+	 */
+	public void ensureCapacity ( long expectedWords ) {
+		checkNotFrozen();
+		long needed = (long) Math.ceil(expectedWords / threshold);
+		if ( needed > hashSize ) {
+			hashTable.resize((int) Math.min(needed, 1 << 30));
+			hashTable.finishResize();
+			hashSize = hashTable.capacity();
+		}
+	}
+
+	/*
+	 * Estimates the number of unique words in the movies' descriptions, after noise words
+	 * and punctuation are discarded, with a HyperLogLog sketch.
+	 * 
+	 * @param allMovies the movies as returned by readInputFile()
+	 * @return the estimated number of unique words
+	 */
+	public long estimateVocabularySize ( ArrayList<ArrayList<String>> allMovies ) {
+		VocabularyEstimator estimator = new VocabularyEstimator();
+		for (int i = 0; i < allMovies.size(); i++) {
+			for (int j = 1; j < allMovies.get(i).size(); j++) {
+				String word = isWord(allMovies.get(i).get(j));
+				if (word != null) {
+					estimator.add(word);
+				}
+			}
+		}
+		return estimator.estimate();
+	}
+
 	/*
 	 * This method reads movies title and description from the input file.
      * 
@@ -137,20 +397,53 @@ public class RUMDbSearchEngine {
 	 * 
 	 */
 	public void insertMoviesIntoHashTable ( String inputFile ) {
+		insertMoviesIntoHashTable(inputFile, false);
+	}
+
+	/* 
+	 * Same as insertMoviesIntoHashTable(inputFile), but when @presize is true the
+	 * vocabulary size is estimated with estimateVocabularySize() first and the hash table
+	 * is sized with ensureCapacity() so that no rehash happens while loading.
+	 * 
+	 * @param inputFile the file to be read containg movie's titles and descriptions
+	 * @param presize true to size the hash table before inserting
+	 */
+	public void insertMoviesIntoHashTable ( String inputFile, boolean presize ) {
 
-        // COMPLETE THIS METHOD
+		checkNotFrozen();
 	ArrayList<ArrayList<String>> result = readInputFile(inputFile);
-		for (int i = 0; i < result.size(); i++) {
-			for (int j = 1; j < result.get(i).size(); j++) {
-				String word = result.get(i).get(j);
+		if (presize) {
+			ensureCapacity((long) Math.ceil(estimateVocabularySize(result) * ESTIMATE_SLACK));
+		}
+		insertMovies(result);
+		sortWords(allWords());
+		// the movies touch most words, so the cached queries are dropped once for all
+		if (queryCache != null) {
+			queryCache.clear();
+		}
+	}
+
+	/* 
+	 * Inserts every description word of @allMovies into the hash table. The query cache
+	 * is left to the caller, see insertMoviesIntoHashTable().
+	 * 
+	 * @param allMovies the movies as returned by readInputFile()
+	 */
+	protected void insertMovies ( ArrayList<ArrayList<String>> allMovies ) {
+		for (int i = 0; i < allMovies.size(); i++) {
+			int docId = documents.add(allMovies.get(i).get(0), allMovies.get(i).size() - 1);
+			for (int j = 1; j < allMovies.get(i).size(); j++) {
+				String word = allMovies.get(i).get(j);
 				word = isWord(word);
 				if (word != null) {
-					Location loc = new Location(result.get(i).get(0), j);
-					insertWordLocation(word, loc);
+					addLocation(word, docId, j);
 				}
 			}
 		}
-
+		// no lookup follows the inserts of a load, so the last resize is finished here
+		if (hashTable.isResizing()) {
+			hashTable.finishResize();
+		}
 	}
 
     /**
@@ -163,7 +456,7 @@ public class RUMDbSearchEngine {
 	 * @param word Candidate word
 	 * @return word (word without trailing punctuation, LOWER CASE)
 	 */
-	private String isWord ( String word ) {
+	protected String isWord ( String word ) {
 		int p = 0;
     	char ch = word.charAt(word.length()-(p+1));
     	while (ch == '.' || ch == ',' || ch == '?' || ch == ':' || ch == ';' || ch == '!') {
@@ -199,15 +492,18 @@ public class RUMDbSearchEngine {
 	 */
 	public void print () {
 
-        for ( int i = 0; i < hashTable.length; i++ ) {
+        if ( frozenTable != null ) {
+            for ( int i = 0; i < frozenTable.size(); i++ ) {
+                StdOut.printf("[%d]->%s%n", i, frozenTable.getSlot(i).toString());
+            }
+            return;
+        }
+        for ( int i = 0; i < hashTable.capacity(); i++ ) {
             
             StdOut.printf("[%d]->", i);
-            for ( WordOccurrence ptr = hashTable[i]; ptr != null; ptr = ptr.next ) {
-
-                StdOut.print(ptr.toString());
-                if ( ptr.next != null ) {
-                    StdOut.print("->");
-                }
+            WordOccurrence occ = hashTable.getSlot(i);
+            if ( occ != null ) {
+                StdOut.print(occ.toString());
             }
             StdOut.println();
         }
@@ -222,220 +518,153 @@ public class RUMDbSearchEngine {
 	 * @param loc the word's position within the description.
 	 */
 	public void insertWordLocation (String word, Location loc) {
+		insertWordLocation(word, documents.idOf(loc.getTitle()), loc.getPosition());
+	}
 
-        // COMPLETE THIS METHOD
-		WordOccurrence occ= getWordOccurrence(word);
-		if (occ == null) {
-			int index = hashFunction(word);
-			WordOccurrence temp = hashTable[index];
-			hashTable[index] = new WordOccurrence(word);
-			hashTable[index].addOccurrence(loc);
-			hashTable[index].next = temp;
+	/*
+	 * Same as insertWordLocation(word, loc), for the movie with id @docId (see
+	 * getDocumentTable()).
+	 * 
+	 * @param word to be inserted
+	 * @param docId the movie's id
+	 * @param position the word's position within the description.
+	 */
+	public void insertWordLocation (String word, int docId, int position) {
 
+		checkNotFrozen();
+		wordChanged(addLocation(word, docId, position).getWord());
+	}
+
+	/*
+	 * Inserts a location as insertWordLocation(word, docId, position) does, without
+	 * touching the query cache.
+	 * @return the word's WordOccurrence
+	 */
+	private WordOccurrence addLocation (String word, int docId, int position) {
+
+		int hash = hashFunction(word);
+		WordOccurrence occ = hashTable.get(word, 0, word.length(), hash);
+		if (occ == null) {
+			if ((double) (wordCount + 1) / hashSize > threshold) {
+				rehash(hashSize * 2);
+			}
+			occ = new WordOccurrence(word.toLowerCase(), documents);
+			hashTable.add(occ, hash);
 			wordCount++;
-		} else {
-			occ.addOccurrence(loc);
+			wordAdded(occ);
 		}
-
-        if (wordCount / hashSize > threshold) {
-			rehash(hashSize * 2);
+		occ.addOccurrence(docId, position);
+		if (position > documents.getLength(docId)) {
+			documents.growLength(docId, position);
 		}
-    
+		return occ;
 	}
 
-		// int index = hashFunction(word);
-		// System.out.println(index);
-		// if(getWordOccurrence(word) == null && hashTable[index] == null){
-		// 	int newSize = hashSize*2;
-		// 	rehash(newSize);
-		// 	WordOccurrence insert = new WordOccurrence(word);
-		// 	insert.addOccurrence(loc);
-		// }else if(getWordOccurrence(word)== null && hashTable[index] != null ){
-		// 	int newSize = hashSize*2;
-		// 	rehash(newSize);
-			
-		// }
-		
-        // }
-
-
 	/*
 	 * Rehash the hash table to newHashSize. Rehash happens when the load factor is
      * greater than the @threshold (load factor = wordCount/hashSize).
+     * 
+     * Only the slots are rebuilt, the WordOccurrence objects and their locations are
+     * kept as they are. The slots are moved incrementally by the following inserts and
+     * lookups, so no single insertWordLocation() call pays for the whole table.
      * 
 	 * @param newHashSize is the new hash size
 	 */
-	private void findLocations (WordOccurrence old, WordOccurrence newer) {
-
-		if (old.getLocations().size() == 0) {
-			return;
-		}
-		for (int i = 0; i < old.getLocations().size(); i++) {
-			Location loc = old.getLocations().get(i);
-			newer.addOccurrence(loc.getTitle(), loc.getPosition());
-		}
-	}
 	private void rehash (int newHashSize){
-
-        // COMPLETE THIS METHOD
-		hashSize = newHashSize;
-		WordOccurrence[] newHashTable = new WordOccurrence[newHashSize];
-
-		for (int i = 0; i < newHashSize; i++) {
-			newHashTable[i] = null;
-		}
-
-		for (int i = 0; i <  hashTable.length; i++) {
-			WordOccurrence ocr = hashTable[i];
-			while (ocr != null) {
-				int newPosition = hashFunction(ocr.getWord());
-				if (newHashTable[newPosition] == null) {
-					newHashTable[newPosition] = new WordOccurrence(ocr.getWord());
-					findLocations(ocr, newHashTable[newPosition]);
-				} else {
-					WordOccurrence temp = newHashTable[newPosition];
-					while (temp.next != null) {
-						temp = temp.next;
-					}
-					temp.next = new WordOccurrence(ocr.getWord());
-					findLocations(ocr, temp.next);
-				}
-				ocr = ocr.next;
-			}
-		}
-
-		hashTable = newHashTable;
+		hashTable.resize(newHashSize);
+		hashSize = hashTable.capacity();
+		resizeCount++;
 	}
 
 	/* 
-	 * Find the WordOccurrence object with the target word in the hash table
+	 * Find the WordOccurrence object with the target word in the hash table.
+	 * The search ignores case and does not allocate.
 	 * @param word search target
 	 * @return @word WordOccurrence object
 	 */
-	public WordOccurrence getWordOccurrence (String word) {
-
-        // COMPLETE THIS METHOD
-		int result = hashFunction(word);
-		WordOccurrence index = hashTable[result];
+	public WordOccurrence getWordOccurrence (CharSequence word) {
+		return getWordOccurrence(word, 0, word.length());
+	}
 
-		while (index != null) {
-			if (index.getWord().equals(word)) {
-				return index;
-			}
-			index = index.next;
+	/* 
+	 * Find the WordOccurrence object of the word in @text[start, end).
+	 * @param text holds the search target, for example a whole query line
+	 * @param start index of the first character of the word
+	 * @param end index after the last character of the word
+	 * @return the word's WordOccurrence object, or null if it is not in the table
+	 */
+	public WordOccurrence getWordOccurrence (CharSequence text, int start, int end) {
+		if ( frozenTable != null ) {
+			return frozenTable.get(text, start, end);
 		}
-		return null;
-			
+		return hashTable.get(text, start, end, TermDictionary.hash(text, start, end));
+	}
 
-//int i = hashCode();
-// 		for(WordOccurrence x = hashTable[i]; x != null; x = x.next){
-// 			if(hashTable[i].getWord().equals(x.getWord())){
-// 				return (WordOccurrence) x;
-// 			} 
-		
-// 		}
-// return null;
-// 		int i = hashFunction(word);
-// 		WordOccurrence ptr = hashTable[i];
-// 		while ( ptr!=null){
-// 			if(hashTable[i].getWord().equals(ptr.getWord())){
-// 			return ptr;
-			
-// 		}else{
-// 			ptr = ptr.next;
-// 		}
-		
-// 		}
-// return null;
-       
-		
-}
+	/* 
+	 * Find the WordOccurrence object of the word in @text[offset, offset+length).
+	 * @param text holds the search target
+	 * @param offset index of the first character of the word
+	 * @param length number of characters in the word
+	 * @return the word's WordOccurrence object, or null if it is not in the table
+	 */
+	public WordOccurrence getWordOccurrence (char[] text, int offset, int length) {
+		if ( frozenTable != null ) {
+			return frozenTable.get(text, offset, length);
+		}
+		return hashTable.get(text, offset, length, TermDictionary.hash(text, offset, length));
+	}
     
 	/*
-	 * Finds all occurrences of wordA and wordB in the hash table, and add them to an 
-	 * ArrayList of MovieSearchResult based on titles.
+	 * Finds the movies whose description contains both wordA and wordB, and add them to
+	 * an ArrayList of MovieSearchResult with the locations of both words.
 	 * 		(no need to calculate distance here)
+	 * 
+	 * The movies are found by a DocIntersection of the two words' postings, so the cost
+	 * grows with the word that occurs in fewer movies. Each result gets its own copy of
+	 * the decoded locations, and titles are only looked up by getTitle(). Callers that
+	 * do not need every movie should use searchResults() instead.
      * 
 	 * @param wordA is the first queried word
 	 * @param wordB is the second queried word
-	 * @return ArrayList of MovieSearchResult objects.
+	 * @return ArrayList of MovieSearchResult objects in increasing movie id order, empty
+	 * 		if either word is not in the table.
 	 */
-
-	private int existsInArr (String title, ArrayList<MovieSearchResult> list) {
-		for (int i = 0; i < list.size(); i++) {
-			if (list.get(i).getTitle().equals(title)) {
-				return i;
-			}
-		}
-		return -1;
-	}
 	public ArrayList<MovieSearchResult> createMovieSearchResult (String wordA, String wordB) {
 
-       // COMPLETE THIS METHOD
-		// ArrayList<MovieSearchResult> result = new ArrayList<MovieSearchResult>();
-		// WordOccurrence worda = getWordOccurrence(wordA);
-		// WordOccurrence wordb = getWordOccurrence(wordB);	
-		// ArrayList<Location> LocationA = worda.getLocations();
-		// ArrayList<Location> LocationB = worda.getLocations();
-
-		// if(worda == null || wordb == null){
-		// 	return null;
-		// }
-
-		// for(int i = 0; i<LocationA.size();i++){
-		// 	MovieSearchResult x = new MovieSearchResult(LocationA.get(i).getTitle());
-		// 	x.addOccurrenceA(LocationA.get(i).getPosition());
-		// 	result.add(x);
-		// }
-		// for(int i = 0; i<LocationA.size();i++){
-		// 	MovieSearchResult x = new MovieSearchResult(LocationA.get(i).getTitle());
-		// 	x.addOccurrenceB(LocationB.get(i).getPosition());
-		// 	result.add(x);
-		// }
-
-		// for(int i =0; i <result.size(); i++){
-		// 	for(int j = i+1; j<result.size(); j++){
-		// 		if(result.get(i).getTitle().equals(result.get(i).getTitle())){
-		// 			result.remove(j);
-		// 		}
-		// 	}
-		// }
-		// return result;
 		ArrayList<MovieSearchResult> result = new ArrayList<MovieSearchResult>();
 
-        WordOccurrence wordOcc = getWordOccurrence(wordA);
-		ArrayList<Location> titles = wordOcc.getLocations();
-
-		for (int i = 0; i < titles.size(); i++) {
-			int indexExists = existsInArr(titles.get(i).getTitle(), result);
-			if (indexExists == -1) {
-				MovieSearchResult newAdd = new MovieSearchResult(titles.get(i).getTitle());
-				newAdd.addOccurrenceA(titles.get(i).getPosition());
-				result.add(newAdd);
-			} else {
-				MovieSearchResult oldAdd = result.get(indexExists);
-				oldAdd.addOccurrenceA(titles.get(i).getPosition());
-			}
-		}
-
-		wordOcc = getWordOccurrence(wordB);
-		titles = wordOcc.getLocations();
-		for (int i = 0; i < titles.size(); i++) {
-			int indexExists = existsInArr(titles.get(i).getTitle(), result);
-			if (indexExists == -1) {
-				MovieSearchResult newAdd = new MovieSearchResult(titles.get(i).getTitle());
-				newAdd.addOccurrenceB(titles.get(i).getPosition());
-				result.add(newAdd);
-			} else {
-				MovieSearchResult oldAdd = result.get(indexExists);
-				oldAdd.addOccurrenceB(titles.get(i).getPosition());
-			}
+		SearchResultIterator it = searchResults(wordA, wordB);
+		while (it.hasNext()) {
+			result.add(it.next());
 		}
 
 		return result;
 	
 	}
 
+	/*
+	 * Gives the movies of createMovieSearchResult() one at a time, as they are asked
+	 * for. searchResults(wordA, wordB).hasNext() tells whether any movie holds both
+	 * words without making a single result, and the first few movies in id order
+	 * only cost the locations of those movies.
+	 *
+	 * @param wordA the first word to search
+	 * @param wordB the second word to search
+	 * @return the movies in increasing movie id order, none if either word is not in
+	 * 		the table
+	 */
+	public SearchResultIterator searchResults (String wordA, String wordB) {
+		return new SearchResultIterator(getWordOccurrence(wordA), getWordOccurrence(wordB), documents);
+	}
+
+	/*
+	 * @return the movies of searchResults(wordA, wordB) as a sequential stream, so that
+	 * 		findFirst(), anyMatch() or limit() stop the intersection early
+	 */
+	public Stream<MovieSearchResult> searchResultStream (String wordA, String wordB) {
+		return searchResults(wordA, wordB).stream();
+	}
+
 	/*
 	 * 
      * Computes the minimum distance between the two wordA and wordB in @msr.
@@ -465,35 +694,41 @@ public class RUMDbSearchEngine {
 	 */
 	public void calculateMinDistance(MovieSearchResult msr){
 
-        // COMPLETE THIS METHOD
-		int wordAPtr = 0;
-		int wordBPtr = 0;
+		int min = minDistance(msr.getLocationsA(), msr.getStartA(), msr.getEndA(),
+				msr.getLocationsB(), msr.getStartB(), msr.getEndB(), 0);
 
-		int min = msr.getMinDistance();
+		if (min != -1 && (msr.getMinDistance() == -1 || min < msr.getMinDistance())) {
+			msr.setMinDistance(min);
+		}
+	}
 
-		ArrayList<Integer> arrA = msr.getArrayListA();
-		ArrayList<Integer> arrB = msr.getArrayListB();
+	/*
+	 * Computes the minimum distance between a location in arrA[startA, endA) and one in
+	 * arrB[startB, endB), both sorted, as described in calculateMinDistance. The scan
+	 * stops as soon as a distance of @floor is found, as none can be smaller.
+	 * @return the minimum distance, or -1 if either slice is empty
+	 */
+	private static int minDistance(int[] arrA, int startA, int endA, int[] arrB, int startB, int endB, int floor){
 
-		if (arrA.size() == 0) {
-			return;
-		}
-		if (arrB.size() == 0) {
-			return;
-		}
+		int min = -1;
+		int wordAPtr = startA, wordBPtr = startB;
 
-		while (wordAPtr < arrA.size() && wordBPtr < arrB.size()) {
-			int tempMin = Math.abs(arrA.get(wordAPtr) - arrB.get(wordBPtr));
+		while (wordAPtr < endA && wordBPtr < endB) {
+			int tempMin = Math.abs(arrA[wordAPtr] - arrB[wordBPtr]);
 			if (min == -1 || tempMin < min) {
 				min = tempMin;
+				if (min <= floor) {
+					break;
+				}
 			}
-			if (arrA.get(wordAPtr) < arrB.get(wordBPtr)) {
+			if (arrA[wordAPtr] < arrB[wordBPtr]) {
 				wordAPtr++;
 			} else {
 				wordBPtr++;
 			}
 		}
 
-		msr.setMinDistance(min);
+		return min;
 	}
 
 	/*
@@ -506,48 +741,962 @@ public class RUMDbSearchEngine {
      * @return ArrayList of MovieSearchResult, with length <= 10. Each
 	 * MovieSearchResult object returned must have a non -1 distance (meaning that
      * both words appear in the description). The ArrayList is expected to be 
-     * sorted from the smallest distance to the greatest.
+     * sorted from the smallest distance to the greatest. It is empty if either word
+     * is not in the table.
 	 * 		
 	 * 	NOTE: feel free to use Collections.sort( arrayListOfMovieSearchResult ); to sort.
 	 */
 	public ArrayList<MovieSearchResult> topTenSearch(String wordA, String wordB){
+		return topKSearch(wordA, wordB, 10);
+	}
+
+	/*
+	 * Same as topTenSearch(wordA, wordB), but returns the @k movies with the smallest
+	 * distances. Movies with the same distance are in increasing id order.
+	 *
+	 * The best movies are kept in a TopKHeap of (distance, movie id) pairs, so the search
+	 * costs O(N log k) for N movies containing both words. The locations of a movie are
+	 * only copied when the heap keeps it, which happens about k (1 + ln(N / k)) times.
+	 *
+	 * Two different words are at least 1 apart, and a word is 0 from itself. Once k
+	 * movies at that smallest possible distance are kept, no later movie can beat them
+	 * (a tie goes to the lower id), so the search stops without looking at the rest.
+	 *
+	 * If fuzzy matching is on (see setFuzzyEdits()) and a word is not in the table, the
+	 * search is fuzzySearch(wordA, wordB, k, getFuzzyEdits()). Otherwise, if the query
+	 * cache is on (see setQueryCacheCapacity()), the results of a query asked for before
+	 * are taken from the cache.
+	 *
+	 * @param wordA the first word to search
+	 * @param wordB the second word to search
+	 * @param k the number of movies to return, >= 0
+	 * @return ArrayList of MovieSearchResult, with length <= k, sorted by increasing
+	 * 		distance. It is empty if either word is not in the table.
+	 */
+	public ArrayList<MovieSearchResult> topKSearch(String wordA, String wordB, int k){
+		ArrayList<MovieSearchResult> topK = new ArrayList<MovieSearchResult>();
+		WordOccurrence occA = getWordOccurrence(wordA);
+		WordOccurrence occB = getWordOccurrence(wordB);
+		if ((occA == null || occB == null) && fuzzyEdits > 0) {
+			return fuzzySearch(wordA, wordB, k, fuzzyEdits);
+		}
+		QueryCache cache = queryCache;
+		String[] words = { wordA, wordB };
+		String key = cache != null ? QueryCache.key(words, k) : null;
+		if (cache != null) {
+			ArrayList<MovieSearchResult> cached = cache.get(key);
+			if (cached != null) {
+				return copyResults(cached);
+			}
+		}
+		if (occA != null && occB != null) {
+			topK = topKAfter(occA, occB, k, -1);
+		}
+		if (cache != null) {
+			cache.put(key, words, copyResults(topK));
+		}
+		return topK;
+	}
+
+	/*
+	 * @return a new list of copies of @results, see MovieSearchResult.copy()
+	 */
+	private static ArrayList<MovieSearchResult> copyResults(ArrayList<MovieSearchResult> results) {
+		ArrayList<MovieSearchResult> copies = new ArrayList<MovieSearchResult>(results.size());
+		for (MovieSearchResult res : results) {
+			copies.add(res.copy());
+		}
+		return copies;
+	}
+
+	/*
+	 * Returns a page of the movies containing both @wordA and @wordB, in the order of
+	 * topKSearch(): increasing distance, then increasing id. The first page is asked
+	 * for with a null @after token; each page gives the token of the next one, which
+	 * holds the (distance, movie id) pair of the page's last movie, and the next page
+	 * holds the movies ranked after that pair.
+	 *
+	 * A page is computed like topKSearch(wordA, wordB, pageSize), with the movies ranked
+	 * at or before the token left out of the TopKHeap, so every page costs about the
+	 * same: the movies of earlier pages are neither kept nor sorted again.
+	 *
+	 * @param wordA the first word to search
+	 * @param wordB the second word to search
+	 * @param pageSize the number of movies per page, >= 1
+	 * @param after the token of the previous page, or null for the first page
+	 * @return the page; it is empty if either word is not in the table
+	 * @throws IllegalArgumentException if @after is not a token of this method
+	 */
+	public SearchPage searchPage(String wordA, String wordB, int pageSize, String after){
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("page size must be >= 1: " + pageSize);
+		}
+		long pair = after == null ? -1 : SearchPage.parseToken(after);
+		WordOccurrence occA = getWordOccurrence(wordA);
+		WordOccurrence occB = getWordOccurrence(wordB);
+		ArrayList<MovieSearchResult> page = new ArrayList<MovieSearchResult>();
+		if (occA != null && occB != null) {
+			page = topKAfter(occA, occB, pageSize, pair);
+		}
+		String next = null;
+		if (page.size() == pageSize) {
+			MovieSearchResult last = page.get(pageSize - 1);
+			next = SearchPage.token(TopKHeap.pack(last.getMinDistance(), last.getDocId()));
+		}
+		return new SearchPage(page, next);
+	}
+
+	/*
+	 * Finds the @k movies holding both words with the smallest (distance, movie id)
+	 * pairs greater than @after, as described in topKSearch().
+	 *
+	 * @param after a pair packed by TopKHeap.pack(), or -1 to rank every movie
+	 * @return the movies, sorted by increasing distance then increasing id
+	 */
+	private ArrayList<MovieSearchResult> topKAfter(WordOccurrence occA, WordOccurrence occB, int k, long after){
+		if (k == 0) {
+			return new ArrayList<MovieSearchResult>();
+		}
+		// no movie ranks before the smallest possible distance, nor before @after
+		int floor = Math.max(occA == occB ? 0 : 1, after < 0 ? 0 : TopKHeap.rankOf(after));
+		RankedResults best = new RankedResults(k, floor, documents);
+
+		DocIntersection both = new DocIntersection(occA, occB);
+		PostingsCursor a = both.cursor(0);
+		PostingsCursor b = both.cursor(1);
+		for (int doc = both.nextDoc(); doc != PostingsCursor.NO_MORE_DOCS; doc = both.nextDoc()) {
+			int dist = minDistance(a.positions(), 0, a.freq(), b.positions(), 0, b.freq(), occA == occB ? 0 : 1);
+			if (TopKHeap.pack(dist, doc) > after && best.offer(dist, doc)) {
+				best.keep(doc, a.positions(), 0, a.freq(), b.positions(), 0, b.freq(), dist);
+				if (best.isDone()) {
+					break;
+				}
+			}
+		}
+		return best.sorted();
+	}
+
+	/*
+	 * Runs topTenSearch(wordA, wordB) for every pair of @queries, on the common
+	 * ForkJoinPool. See searchBatch(queries, pool).
+	 *
+	 * @param queries the pairs of words to search
+	 * @return the results of each query, in the order of @queries
+	 */
+	public ArrayList<ArrayList<MovieSearchResult>> searchBatch(List<QueryPair> queries){
+		return searchBatch(queries, ForkJoinPool.commonPool());
+	}
 
-        // COMPLETE THIS METHOD
-		// ArrayList<MovieSearchResult> list1= new ArrayList<MovieSearchResult>();
-		// ArrayList<MovieSearchResult> list2=  createMovieSearchResult(wordA,wordB);
-
-		// for(int i = 0; i<list2.size(); i++){
-		// 	calculateMinDistance(list2.get(i));
-		// }
-		// Collections.sort(list2);
-
-		// for(int j = 0; j<10; j++){
-		// // dist == -1 then skip	if(){}
-		// list1.add(list2.get(j));
-		// }
-		 //list1;
-		 ArrayList<MovieSearchResult> top10 = new ArrayList<MovieSearchResult>();
-		 ArrayList<MovieSearchResult> allPos = createMovieSearchResult(wordA, wordB);
- 
-		 for (int i = 0; i < allPos.size(); i++) {
-			 calculateMinDistance(allPos.get(i));
-			 if (allPos.get(i).getMinDistance() != -1) {
-				 int orderPos = orderIntoArr(allPos.get(i), top10);
-				 top10.add(orderPos, allPos.get(i));
-				 if (top10.size() == 11) {
-					 top10.remove(10);
-				 }
-			 }
-		 }
- 
-		 return top10;
-	}
-	private int orderIntoArr (MovieSearchResult pos, ArrayList<MovieSearchResult> t10) {
-		for (int i = 0; i < t10.size(); i++) {
-			if (t10.get(i).getMinDistance() > pos.getMinDistance()) {
-				return i;
-			}
-		}
-		return t10.size();
+	/*
+	 * Runs topTenSearch(wordA, wordB) for every pair of @queries, in parallel on @pool.
+	 * The results are the same, but fuzzy matching and the query cache are not used.
+	 *
+	 * Every word of the batch is decoded once into a DecodedPostings, in parallel,
+	 * however many queries use it. The queries are then grouped by their rarer word,
+	 * whose movies drive the intersection with the other word, and the groups are
+	 * evaluated in parallel, so a thread goes through the same postings for a whole
+	 * group. The words are looked up on the calling thread, since a lookup in a table
+	 * that is being resized moves its slots.
+	 *
+	 * @param queries the pairs of words to search
+	 * @param pool the pool that runs the queries
+	 * @return the results of each query, in the order of @queries
+	 */
+	public ArrayList<ArrayList<MovieSearchResult>> searchBatch(List<QueryPair> queries, ForkJoinPool pool){
+		final int n = queries.size();
+		IdentityHashMap<WordOccurrence, Integer> index = new IdentityHashMap<WordOccurrence, Integer>();
+		final ArrayList<WordOccurrence> terms = new ArrayList<WordOccurrence>();
+		final int[] termA = new int[n];
+		final int[] termB = new int[n];
+		for (int q = 0; q < n; q++) {
+			termA[q] = termIndex(getWordOccurrence(queries.get(q).getWordA()), index, terms);
+			termB[q] = termIndex(getWordOccurrence(queries.get(q).getWordB()), index, terms);
+		}
+
+		final DecodedPostings[] decoded = new DecodedPostings[terms.size()];
+		pool.invoke(new RangeTask(0, decoded.length, new RangeBody() {
+			public void run(int i) {
+				decoded[i] = new DecodedPostings(terms.get(i));
+			}
+		}));
+
+		// queries with a missing word have no results; the others are sorted by rarer word
+		final ArrayList<ArrayList<MovieSearchResult>> results = new ArrayList<ArrayList<MovieSearchResult>>(n);
+		final int[] lead = new int[n];
+		Integer[] sorted = new Integer[n];
+		int searched = 0;
+		for (int q = 0; q < n; q++) {
+			results.add(new ArrayList<MovieSearchResult>());
+			if (termA[q] >= 0 && termB[q] >= 0) {
+				boolean aRarer = decoded[termA[q]].docCount() <= decoded[termB[q]].docCount();
+				lead[q] = aRarer ? termA[q] : termB[q];
+				sorted[searched++] = q;
+			}
+		}
+		Arrays.sort(sorted, 0, searched, new Comparator<Integer>() {
+			public int compare(Integer x, Integer y) {
+				return lead[x] != lead[y] ? Integer.compare(lead[x], lead[y]) : Integer.compare(x, y);
+			}
+		});
+		final int[] order = new int[searched];
+		int groups = 0;
+		final int[] groupStarts = new int[searched + 1];
+		for (int i = 0; i < searched; i++) {
+			order[i] = sorted[i];
+			if (i == 0 || lead[order[i]] != lead[order[i - 1]]) {
+				groupStarts[groups++] = i;
+			}
+		}
+		groupStarts[groups] = searched;
+
+		pool.invoke(new RangeTask(0, groups, new RangeBody() {
+			public void run(int g) {
+				for (int i = groupStarts[g]; i < groupStarts[g + 1]; i++) {
+					int q = order[i];
+					results.set(q, topKSearch(decoded[termA[q]], decoded[termB[q]], 10));
+				}
+			}
+		}));
+		return results;
+	}
+
+	/*
+	 * @return the index of @occ in @terms, adding it if it is new, or -1 if @occ is null
+	 */
+	private static int termIndex(WordOccurrence occ, IdentityHashMap<WordOccurrence, Integer> index,
+			ArrayList<WordOccurrence> terms){
+		if (occ == null) {
+			return -1;
+		}
+		Integer i = index.get(occ);
+		if (i == null) {
+			i = terms.size();
+			index.put(occ, i);
+			terms.add(occ);
+		}
+		return i;
+	}
+
+	/*
+	 * Same as topKSearch(wordA, wordB, k) over decoded postings: the movies of the rarer
+	 * word are looked up in the other word's by exponential search.
+	 */
+	private ArrayList<MovieSearchResult> topKSearch(DecodedPostings a, DecodedPostings b, int k){
+		int floor = a == b ? 0 : 1;
+		RankedResults best = new RankedResults(k, floor, documents);
+		DecodedPostings rare = a.docCount() <= b.docCount() ? a : b;
+		DecodedPostings other = rare == a ? b : a;
+
+		int j = 0;
+		for (int i = 0; i < rare.docCount(); i++) {
+			int doc = rare.doc(i);
+			j = other.advance(j, doc);
+			if (j == other.docCount()) {
+				break;
+			}
+			if (other.doc(j) != doc) {
+				continue;
+			}
+			int ia = rare == a ? i : j;
+			int ib = rare == a ? j : i;
+			int[] posA = a.getPositions(), posB = b.getPositions();
+			int dist = minDistance(posA, a.start(ia), a.end(ia), posB, b.start(ib), b.end(ib), floor);
+			if (best.offer(dist, doc)) {
+				best.keep(doc, posA, a.start(ia), a.end(ia), posB, b.start(ib), b.end(ib), dist);
+				if (best.isDone()) {
+					break;
+				}
+			}
+		}
+		return best.sorted();
+	}
+
+	/*
+	 * The work done for each index of a RangeTask.
+	 */
+	private interface RangeBody {
+		void run(int i);
+	}
+
+	/*
+	 * Runs a RangeBody for every index of [lo, hi), splitting the range in halves down
+	 * to single indexes so that idle threads of the pool can steal them.
+	 */
+	private static class RangeTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int lo, hi;
+		private final RangeBody body;
+
+		RangeTask(int lo, int hi, RangeBody body) {
+			this.lo   = lo;
+			this.hi   = hi;
+			this.body = body;
+		}
+
+		protected void compute() {
+			if (hi - lo <= 1) {
+				if (hi > lo) {
+					body.run(lo);
+				}
+				return;
+			}
+			int mid = (lo + hi) >>> 1;
+			invokeAll(new RangeTask(lo, mid, body), new RangeTask(mid, hi, body));
+		}
+	}
+
+	/*
+	 * Makes the result of @doc with copies of the locations locationsA[startA, endA) and
+	 * locationsB[startB, endB).
+	 * @return the result
+	 */
+	private static MovieSearchResult newResult(int doc, int[] locationsA, int startA, int endA,
+			int[] locationsB, int startB, int endB, int dist, DocumentTable documents) {
+		MovieSearchResult res = new MovieSearchResult(doc, documents);
+		res.setOccurrencesA(Arrays.copyOfRange(locationsA, startA, endA), 0, endA - startA);
+		res.setOccurrencesB(Arrays.copyOfRange(locationsB, startB, endB), 0, endB - startB);
+		res.setMinDistance(dist);
+		return res;
+	}
+
+	/*
+	 * The K best movies of a two word search: a TopKHeap of (rank, movie id) pairs and
+	 * the MovieSearchResult of every movie in it. A movie's result is dropped when the
+	 * heap evicts the movie, so at most K results are held however many movies are
+	 * offered.
+	 */
+	private static class RankedResults {
+
+		private final TopKHeap best;
+		private final HashMap<Integer, MovieSearchResult> kept;   // movie id -> result, for the heap's movies
+		private final int floor;                                  // the smallest possible rank, -1 if unknown
+		private final DocumentTable documents;
+
+		RankedResults(int k, int floor, DocumentTable documents) {
+			this.best      = new TopKHeap(k);
+			this.kept      = new HashMap<Integer, MovieSearchResult>();
+			this.floor     = floor;
+			this.documents = documents;
+		}
+
+		/*
+		 * Offers (@rank, @doc) to the heap, dropping the result of the movie it evicts.
+		 * @return true if the movie is kept; its result must then be made by keep()
+		 */
+		boolean offer(int rank, int doc) {
+			long evicted = best.isFull() ? best.worst() : -1;
+			if (!best.offer(rank, doc)) {
+				return false;
+			}
+			if (evicted != -1) {
+				kept.remove(TopKHeap.docIdOf(evicted));
+			}
+			return true;
+		}
+
+		/*
+		 * Makes the result of @doc, just kept, with copies of the locations
+		 * locationsA[startA, endA) and locationsB[startB, endB).
+		 * @return the result
+		 */
+		MovieSearchResult keep(int doc, int[] locationsA, int startA, int endA,
+				int[] locationsB, int startB, int endB, int dist) {
+			MovieSearchResult res = newResult(doc, locationsA, startA, endA, locationsB, startB, endB, dist, documents);
+			kept.put(doc, res);
+			return res;
+		}
+
+		/*
+		 * @return true once K movies of the smallest possible rank are kept, so that no
+		 * 		later movie can enter
+		 */
+		boolean isDone() {
+			return best.isFull() && TopKHeap.rankOf(best.worst()) == floor;
+		}
+
+		/*
+		 * @return the results kept, by increasing rank then increasing movie id
+		 */
+		ArrayList<MovieSearchResult> sorted() {
+			long[] pairs = best.sorted();
+			ArrayList<MovieSearchResult> results = new ArrayList<MovieSearchResult>(pairs.length);
+			for (long pair : pairs) {
+				results.add(kept.get(TopKHeap.docIdOf(pair)));
+			}
+			return results;
+		}
+	}
+
+	/*
+	 * Runs topKSearch(anchor, partner, k) for every word of @partners, walking the
+	 * anchor's postings once instead of once per partner.
+	 *
+	 * The anchor's postings are decoded once, movie by movie, into a DecodedPostings.
+	 * For each partner, the movies that hold both words come from the intersection of
+	 * their DocBitmaps, and only the partner's cursor is advanced to them; the anchor's
+	 * positions in each of those movies are found in the decoded postings by
+	 * exponential search from the previous movie. A partner stops at its k movies at
+	 * the smallest possible distance, as in topKSearch.
+	 *
+	 * @param anchor the word to search near each partner
+	 * @param partners the words to search near @anchor
+	 * @param k the number of movies to return per partner, >= 0
+	 * @return a map from each partner, in the order of @partners, to what
+	 * 		topKSearch(anchor, partner, k) returns for it: the anchor's locations are
+	 * 		the A locations. A partner, or the anchor, that is not in the table gives
+	 * 		an empty list.
+	 */
+	public Map<String, ArrayList<MovieSearchResult>> proximitySearch(String anchor, List<String> partners, int k){
+		LinkedHashMap<String, ArrayList<MovieSearchResult>> results = new LinkedHashMap<String, ArrayList<MovieSearchResult>>();
+		for (String partner : partners) {
+			results.put(partner, new ArrayList<MovieSearchResult>());
+		}
+		WordOccurrence anchorOcc = getWordOccurrence(anchor);
+		if (anchorOcc == null || k == 0) {
+			return results;
+		}
+
+		DecodedPostings a = null;
+		for (Map.Entry<String, ArrayList<MovieSearchResult>> entry : results.entrySet()) {
+			WordOccurrence occ = getWordOccurrence(entry.getKey());
+			if (occ == null) {
+				continue;
+			}
+			if (a == null) {
+				a = new DecodedPostings(anchorOcc);
+			}
+			int floor = occ == anchorOcc ? 0 : 1;
+			RankedResults best = new RankedResults(k, floor, documents);
+			PostingsCursor b = occ.cursor();
+			int[] posA = a.getPositions();
+			int i = 0;
+			for (int doc : DocBitmap.and(anchorOcc.getDocSet(), occ.getDocSet())) {
+				i = a.advance(i, doc);
+				b.advance(doc);
+				int dist = minDistance(posA, a.start(i), a.end(i), b.positions(), 0, b.freq(), floor);
+				if (best.offer(dist, doc)) {
+					best.keep(doc, posA, a.start(i), a.end(i), b.positions(), 0, b.freq(), dist);
+					if (best.isDone()) {
+						break;
+					}
+				}
+			}
+			entry.getValue().addAll(best.sorted());
+		}
+		return results;
+	}
+
+	/*
+	 * Same as topKSearch(wordA, wordB, k), but ranks the movies by a HybridScorer score:
+	 * the BM25 scores of both words, from their numbers of movies and the descriptions'
+	 * lengths, plus a boost that grows as the words get closer. Unlike the distance
+	 * alone, this tells apart the many movies where two common words are next to each
+	 * other, and favors the rarer word's movies.
+	 *
+	 * @param wordA the first word to search
+	 * @param wordB the second word to search
+	 * @param k the number of movies to return, >= 0
+	 * @return ArrayList of MovieSearchResult, with length <= k, sorted by decreasing
+	 * 		score (getScore()), movies with the same score in increasing id order. The
+	 * 		results also hold the distance and locations. It is empty if either word is
+	 * 		not in the table.
+	 */
+	public ArrayList<MovieSearchResult> hybridSearch(String wordA, String wordB, int k){
+		WordOccurrence occA = getWordOccurrence(wordA);
+		WordOccurrence occB = getWordOccurrence(wordB);
+		if (occA == null || occB == null || k == 0) {
+			return new ArrayList<MovieSearchResult>();
+		}
+		// scores have no upper bound, so every movie must be scored. The scores are compared
+		// as doubles, so they do not fit in a TopKHeap rank; the queue's head is the worst
+		// result kept
+		PriorityQueue<MovieSearchResult> best = new PriorityQueue<MovieSearchResult>(Math.min(k, 16), WORST_SCORE_FIRST);
+		HybridScorer scorer = new HybridScorer(documents);
+		double idfA = scorer.idf(occA);
+		double idfB = scorer.idf(occB);
+
+		DocIntersection both = new DocIntersection(occA, occB);
+		PostingsCursor a = both.cursor(0);
+		PostingsCursor b = both.cursor(1);
+		for (int doc = both.nextDoc(); doc != PostingsCursor.NO_MORE_DOCS; doc = both.nextDoc()) {
+			int dist = minDistance(a.positions(), 0, a.freq(), b.positions(), 0, b.freq(), 0);
+			double score = scorer.termScore(idfA, a.freq(), doc) + scorer.termScore(idfB, b.freq(), doc)
+					+ scorer.proximity(idfA, idfB, dist);
+			if (best.size() == k) {
+				MovieSearchResult worst = best.peek();
+				if (score < worst.getScore() || (score == worst.getScore() && doc > worst.getDocId())) {
+					continue;
+				}
+				best.poll();
+			}
+			MovieSearchResult res = newResult(doc, a.positions(), 0, a.freq(), b.positions(), 0, b.freq(), dist, documents);
+			res.setScore(score);
+			best.add(res);
+		}
+		ArrayList<MovieSearchResult> results = new ArrayList<MovieSearchResult>(best);
+		results.sort(WORST_SCORE_FIRST.reversed());
+		return results;
+	}
+
+	// orders scored results from the worst to the best: by increasing score, then by
+	// decreasing movie id
+	private static final Comparator<MovieSearchResult> WORST_SCORE_FIRST = new Comparator<MovieSearchResult>() {
+		public int compare(MovieSearchResult x, MovieSearchResult y) {
+			int c = Double.compare(x.getScore(), y.getScore());
+			return c != 0 ? c : Integer.compare(y.getDocId(), x.getDocId());
+		}
+	};
+
+	/*
+	 * Same as topKSearch(wordA, wordB, k), but @patternA and @patternB may hold
+	 * wildcards: '*' matches any number of characters and '?' one, for example
+	 * "advent*" or "*ship". Each pattern is expanded over getSortedDictionary(), and
+	 * the words it matches are searched as one word (see TermUnion): a movie matches a
+	 * pattern if it contains any of them, and the distance is taken between any of the
+	 * first pattern's words and any of the second's.
+	 *
+	 * @param patternA the first pattern to search
+	 * @param patternB the second pattern to search
+	 * @param k the number of movies to return, >= 0
+	 * @return ArrayList of MovieSearchResult, with length <= k, sorted by increasing
+	 * 		distance, movies with the same distance in increasing id order. The locations
+	 * 		are those of all the words each pattern matches. It is empty if a pattern
+	 * 		matches no word.
+	 */
+	public ArrayList<MovieSearchResult> wildcardSearch(String patternA, String patternB, int k){
+		SortedTermDictionary dictionary = getSortedDictionary();
+		int[] idsA = dictionary.expand(patternA.toLowerCase());
+		int[] idsB = dictionary.expand(patternB.toLowerCase());
+		if (idsA.length == 0 || idsB.length == 0 || k == 0) {
+			return new ArrayList<MovieSearchResult>();
+		}
+		// a word matched by both patterns can be 0 from itself
+		int floor = shareTerm(idsA, idsB) ? 0 : 1;
+		RankedResults best = new RankedResults(k, floor, documents);
+
+		TermUnion a = termUnion(dictionary, idsA);
+		TermUnion b = termUnion(dictionary, idsB);
+		ArrayList<DocIterator> required = new ArrayList<DocIterator>();
+		required.add(a.cost() <= b.cost() ? a : b);
+		required.add(a.cost() <= b.cost() ? b : a);
+		DocIterator both = DocIterator.and(required, new ArrayList<DocIterator>());
+
+		for (int doc = both.nextDoc(); doc != DocIterator.NO_MORE_DOCS; doc = both.nextDoc()) {
+			int dist = minDistance(a.positions(), 0, a.freq(), b.positions(), 0, b.freq(), floor);
+			if (best.offer(dist, doc)) {
+				best.keep(doc, a.positions(), 0, a.freq(), b.positions(), 0, b.freq(), dist);
+				if (best.isDone()) {
+					break;
+				}
+			}
+		}
+		return best.sorted();
+	}
+
+	/*
+	 * Same as topKSearch(wordA, wordB, k), but a word that is not in the table is
+	 * replaced by the words within @maxEdits edits (insertions, deletions or
+	 * substitutions of a character) of it, found by a LevenshteinAutomaton over
+	 * getSortedDictionary(). The corrections with the same number of edits are searched
+	 * as one word (see TermUnion), and a movie is ranked by the distance of its closest
+	 * pair of words plus FUZZY_PENALTY for every edit of the pair, so a movie with a
+	 * closer correction ranks first at the same distance.
+	 *
+	 * @param wordA the first word to search
+	 * @param wordB the second word to search
+	 * @param k the number of movies to return, >= 0
+	 * @param maxEdits the number of edits accepted, 0 to LevenshteinAutomaton.MAX_EDITS
+	 * @return ArrayList of MovieSearchResult, with length <= k, sorted by increasing
+	 * 		distance plus penalty, then increasing id. The distance and locations are
+	 * 		those of the pair of words that ranks the movie. It is empty if a word has
+	 * 		no correction.
+	 */
+	public ArrayList<MovieSearchResult> fuzzySearch(String wordA, String wordB, int k, int maxEdits){
+		SortedTermDictionary dictionary = getSortedDictionary();
+		int[][] idsA = corrections(dictionary, wordA, maxEdits);
+		int[][] idsB = corrections(dictionary, wordB, maxEdits);
+		if (idsA == null || idsB == null || k == 0) {
+			return new ArrayList<MovieSearchResult>();
+		}
+
+		TermUnion[] unionsA = new TermUnion[idsA.length];
+		TermUnion[] unionsB = new TermUnion[idsB.length];
+		DocIterator a = fuzzyUnion(dictionary, idsA, unionsA);
+		DocIterator b = fuzzyUnion(dictionary, idsB, unionsB);
+		int minA = 0, minB = 0;
+		while (unionsA[minA] == null) {
+			minA++;
+		}
+		while (unionsB[minB] == null) {
+			minB++;
+		}
+		int floor = FUZZY_PENALTY * (minA + minB) + (shareTerm(idsA[minA], idsB[minB]) ? 0 : 1);
+		RankedResults best = new RankedResults(k, floor, documents);
+
+		ArrayList<DocIterator> required = new ArrayList<DocIterator>();
+		required.add(a.cost() <= b.cost() ? a : b);
+		required.add(a.cost() <= b.cost() ? b : a);
+		DocIterator both = DocIterator.and(required, new ArrayList<DocIterator>());
+
+		for (int doc = both.nextDoc(); doc != DocIterator.NO_MORE_DOCS; doc = both.nextDoc()) {
+			int rank = Integer.MAX_VALUE, dist = -1;
+			TermUnion closeA = null, closeB = null;
+			for (int ea = 0; ea < unionsA.length; ea++) {
+				TermUnion ua = unionsA[ea];
+				if (ua == null || ua.docId() != doc) {
+					continue;
+				}
+				for (int eb = 0; eb < unionsB.length; eb++) {
+					TermUnion ub = unionsB[eb];
+					if (ub == null || ub.docId() != doc || FUZZY_PENALTY * (ea + eb) >= rank) {
+						continue;
+					}
+					int d = minDistance(ua.positions(), 0, ua.freq(), ub.positions(), 0, ub.freq(), 0);
+					if (d + FUZZY_PENALTY * (ea + eb) < rank) {
+						rank   = d + FUZZY_PENALTY * (ea + eb);
+						dist   = d;
+						closeA = ua;
+						closeB = ub;
+					}
+				}
+			}
+			if (best.offer(rank, doc)) {
+				best.keep(doc, closeA.positions(), 0, closeA.freq(), closeB.positions(), 0, closeB.freq(), dist);
+				if (best.isDone()) {
+					break;
+				}
+			}
+		}
+		return best.sorted();
+	}
+
+	/*
+	 * @return the term ids of the corrections of @word by number of edits: only the
+	 * 		word itself if it is in the table, else the words of @dictionary within
+	 * 		@maxEdits edits of it; null if there is none
+	 */
+	private int[][] corrections(SortedTermDictionary dictionary, String word, int maxEdits){
+		String lower = word.toLowerCase();
+		if (getWordOccurrence(word) != null) {
+			return new int[][] { dictionary.expand(lower) };
+		}
+		LevenshteinAutomaton automaton = new LevenshteinAutomaton(lower, maxEdits);
+		int[] ids = dictionary.fuzzy(automaton);
+		if (ids.length == 0) {
+			return null;
+		}
+		int[] counts = new int[maxEdits + 1];
+		int[] edits  = new int[ids.length];
+		for (int i = 0; i < ids.length; i++) {
+			edits[i] = automaton.distance(dictionary.getTerm(ids[i]).getWord());
+			counts[edits[i]]++;
+		}
+		int[][] byEdits = new int[maxEdits + 1][];
+		for (int e = 0; e <= maxEdits; e++) {
+			byEdits[e] = new int[counts[e]];
+			counts[e]  = 0;
+		}
+		for (int i = 0; i < ids.length; i++) {
+			byEdits[edits[i]][counts[edits[i]]++] = ids[i];
+		}
+		return byEdits;
+	}
+
+	/*
+	 * Fills @unions with a TermUnion per non-empty entry of @ids, null for the others.
+	 * @return the movies of any of them
+	 */
+	private static DocIterator fuzzyUnion(SortedTermDictionary dictionary, int[][] ids, TermUnion[] unions){
+		ArrayList<DocIterator> any = new ArrayList<DocIterator>();
+		for (int e = 0; e < ids.length; e++) {
+			if (ids[e].length > 0) {
+				unions[e] = termUnion(dictionary, ids[e]);
+				any.add(unions[e]);
+			}
+		}
+		return any.size() == 1 ? any.get(0) : DocIterator.or(any);
+	}
+
+	/*
+	 * @return true if the sorted term ids @a and @b have one in common
+	 */
+	private static boolean shareTerm(int[] a, int[] b){
+		for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+			if (a[i] == b[j]) {
+				return true;
+			}
+			if (a[i] < b[j]) {
+				i++;
+			} else {
+				j++;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * @return the union of the words @ids of @dictionary
+	 */
+	private static TermUnion termUnion(SortedTermDictionary dictionary, int[] ids){
+		WordOccurrence[] words = new WordOccurrence[ids.length];
+		for (int i = 0; i < ids.length; i++) {
+			words[i] = dictionary.getTerm(ids[i]);
+		}
+		return new TermUnion(words);
+	}
+
+	/*
+	 * Searches the movie database for movies whose description contains every word of
+	 * @words, and ranks them by the smallest window of the description that holds all
+	 * the words: the distance between the first and the last position of the window.
+	 * For two words it is the minimum distance of topTenSearch(wordA, wordB).
+	 *
+	 * n different words cannot fit in a window smaller than n - 1, so a movie's sweep
+	 * stops once it finds such a window, and the search stops once ten movies have one.
+	 *
+	 * @param words the words to search
+	 * @return ArrayList of MovieSearchResult, with length <= 10, sorted by increasing
+	 * 		window (getMinDistance()), movies with the same window in increasing id
+	 * 		order. The results do not hold locations. It is empty if there are no words
+	 * 		or a word is not in the table.
+	 */
+	public ArrayList<MovieSearchResult> topTenSearch(String... words){
+		ArrayList<MovieSearchResult> top10 = new ArrayList<MovieSearchResult>();
+		if (words.length == 0) {
+			return top10;
+		}
+		WordOccurrence[] occs = new WordOccurrence[words.length];
+		for (int i = 0; i < words.length; i++) {
+			occs[i] = getWordOccurrence(words[i]);
+			if (occs[i] == null) {
+				return top10;
+			}
+		}
+
+		DocIntersection all = new DocIntersection(occs);
+		PostingsCursor[] cursors = new PostingsCursor[words.length];
+		for (int i = 0; i < words.length; i++) {
+			cursors[i] = all.cursor(i);
+		}
+		int[] heap = new int[words.length];
+		int[] next = new int[words.length];
+		int floor = -1;
+		for (int i = 0; i < words.length; i++) {
+			int j = 0;
+			while (occs[j] != occs[i]) {
+				j++;
+			}
+			if (j == i) {
+				floor++;
+			}
+		}
+
+		TopKHeap best = new TopKHeap(10);
+		for (int doc = all.nextDoc(); doc != PostingsCursor.NO_MORE_DOCS; doc = all.nextDoc()) {
+			if (best.offer(minWindow(cursors, heap, next, floor), doc)
+					&& best.isFull() && TopKHeap.rankOf(best.worst()) == floor) {
+				break;
+			}
+		}
+
+		for (long pair : best.sorted()) {
+			MovieSearchResult res = new MovieSearchResult(TopKHeap.docIdOf(pair), documents);
+			res.setMinDistance(TopKHeap.rankOf(pair));
+			top10.add(res);
+		}
+		return top10;
+	}
+
+	/*
+	 * Computes the smallest window holding a position of every cursor's current movie,
+	 * with a k-way sweep: a min-heap holds the next position of each word, and the
+	 * window from the heap's smallest position to the largest one seen is a candidate.
+	 * The smallest position is then replaced by the next position of its word, until a
+	 * word runs out. Every position enters the heap once, so the cost is the number of
+	 * positions times the logarithm of the number of words.
+	 *
+	 * @param cursors the words' cursors, all on the same movie
+	 * @param heap scratch array, as long as cursors: word indexes by next position
+	 * @param next scratch array, as long as cursors: each word's next position index
+	 * @param floor the smallest possible window; the sweep stops when it finds one
+	 * @return the window's size, the last position minus the first one
+	 */
+	private static int minWindow(PostingsCursor[] cursors, int[] heap, int[] next, int floor){
+		int k = cursors.length;
+		int max = -1;
+		for (int i = 0; i < k; i++) {
+			next[i] = 1;
+			int p = head(cursors, next, i);
+			max = Math.max(max, p);
+			int h = i;
+			while (h > 0 && head(cursors, next, heap[(h - 1) / 2]) > p) {
+				heap[h] = heap[(h - 1) / 2];
+				h = (h - 1) / 2;
+			}
+			heap[h] = i;
+		}
+
+		int best = Integer.MAX_VALUE;
+		while (true) {
+			int top = heap[0];
+			int[] positions = cursors[top].positions();
+			int min = positions[next[top] - 1];
+			best = Math.min(best, max - min);
+			if (best <= floor || next[top] == cursors[top].freq()) {
+				return best;
+			}
+
+			// replace the smallest position by its word's next one and sift it down
+			int p = positions[next[top]++];
+			max = Math.max(max, p);
+			int h = 0;
+			while (true) {
+				int child = 2 * h + 1;
+				if (child >= k) {
+					break;
+				}
+				if (child + 1 < k && head(cursors, next, heap[child + 1]) < head(cursors, next, heap[child])) {
+					child++;
+				}
+				if (head(cursors, next, heap[child]) >= p) {
+					break;
+				}
+				heap[h] = heap[child];
+				h = child;
+			}
+			heap[h] = top;
+		}
+	}
+
+	/*
+	 * @return the position word @i has in the heap of minWindow
+	 */
+	private static int head(PostingsCursor[] cursors, int[] next, int i){
+		return cursors[i].positions()[next[i] - 1];
+	}
+
+	/*
+	 * Searches the movie database for movies whose description contains @phrase, its
+	 * words at consecutive positions.
+	 *
+	 * The phrase is split into words like a description. Noise words and other tokens
+	 * that are not indexed keep their place in the phrase but match any word, so
+	 * "man of the year" finds "man" and "year" three positions apart; at the ends of the
+	 * phrase they are ignored. The movies are
+	 * found by a DocIntersection of the phrase's words, and in each of them only whether
+	 * the phrase occurs is checked, stopping at its first occurrence.
+	 *
+	 * @param phrase the words to search, separated by spaces
+	 * @return ArrayList of MovieSearchResult in increasing movie id order, with the
+	 * 		distance from the phrase's first indexed word to its last as distance. The
+	 * 		results do not hold locations. It is empty if the phrase has no indexed word
+	 * 		or a word is not in the table.
+	 */
+	public ArrayList<MovieSearchResult> phraseSearch(String phrase){
+		ArrayList<MovieSearchResult> result = new ArrayList<MovieSearchResult>();
+		String[] tokens = phrase.trim().split("\\s+");
+
+		ArrayList<WordOccurrence> occs = new ArrayList<WordOccurrence>();
+		int[] offsets = new int[tokens.length];
+		for (int t = 0; t < tokens.length; t++) {
+			String word = tokens[t].isEmpty() ? null : isWord(tokens[t]);
+			if (word != null) {
+				WordOccurrence occ = getWordOccurrence(word);
+				if (occ == null) {
+					return result;
+				}
+				offsets[occs.size()] = t;
+				occs.add(occ);
+			}
+		}
+		if (occs.isEmpty()) {
+			return result;
+		}
+
+		int k = occs.size();
+		DocIntersection all = new DocIntersection(occs.toArray(new WordOccurrence[k]));
+		PostingsCursor[] cursors = new PostingsCursor[k];
+		for (int i = 0; i < k; i++) {
+			cursors[i] = all.cursor(i);
+		}
+		int[] next = new int[k];
+
+		for (int doc = all.nextDoc(); doc != PostingsCursor.NO_MORE_DOCS; doc = all.nextDoc()) {
+			if (containsPhrase(cursors, offsets, next)) {
+				MovieSearchResult res = new MovieSearchResult(doc, documents);
+				res.setMinDistance(offsets[k - 1] - offsets[0]);
+				result.add(res);
+			}
+		}
+
+		return result;
+	}
+
+	/*
+	 * Searches the movie database for movies whose description matches the boolean
+	 * @query, for example "young AND (man OR woman) NOT war" (see BooleanQuery for the
+	 * language). The query is planned into a tree of iterators over the words' postings,
+	 * rarest word first, so no per-word result list is built.
+	 *
+	 * @param query the boolean query
+	 * @return ArrayList of MovieSearchResult in increasing movie id order, without
+	 * 		distances or locations
+	 * @throws IllegalArgumentException if the query is malformed
+	 */
+	public ArrayList<MovieSearchResult> booleanSearch(String query){
+		ArrayList<MovieSearchResult> result = new ArrayList<MovieSearchResult>();
+		DocIterator it = new BooleanQuery(query).plan(this);
+		for (int doc = it.nextDoc(); doc != DocIterator.NO_MORE_DOCS; doc = it.nextDoc()) {
+			result.add(new MovieSearchResult(doc, documents));
+		}
+		return result;
+	}
+
+	/*
+	 * Checks if the cursors' current movie holds word i at position start + offsets[i]
+	 * for every word i and some start. The word with the fewest positions proposes the
+	 * starts; for each start the others' positions are merged forward to
+	 * start + offsets[i], so every position is passed at most once, and the search stops
+	 * at the first start that matches.
+	 *
+	 * @param cursors the words' cursors, all on the same movie
+	 * @param offsets each word's place in the phrase
+	 * @param next scratch array, as long as cursors: each word's next position index
+	 * @return true if the phrase occurs in the movie
+	 */
+	private static boolean containsPhrase(PostingsCursor[] cursors, int[] offsets, int[] next){
+		int lead = 0;
+		for (int i = 0; i < cursors.length; i++) {
+			next[i] = 0;
+			if (cursors[i].freq() < cursors[lead].freq()) {
+				lead = i;
+			}
+		}
+
+		int[] leadPositions = cursors[lead].positions();
+		starts:
+		for (int p = 0; p < cursors[lead].freq(); p++) {
+			int start = leadPositions[p] - offsets[lead];
+			for (int i = 0; i < cursors.length; i++) {
+				if (i == lead) {
+					continue;
+				}
+				int[] positions = cursors[i].positions();
+				int want = start + offsets[i];
+				while (next[i] < cursors[i].freq() && positions[next[i]] < want) {
+					next[i]++;
+				}
+				if (next[i] == cursors[i].freq()) {
+					return false;
+				}
+				if (positions[next[i]] != want) {
+					continue starts;
+				}
+			}
+			return true;
+		}
+		return false;
 	}
 }
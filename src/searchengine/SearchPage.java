@@ -0,0 +1,67 @@
+package searchengine;
+
+import java.util.ArrayList;
+
+/*
+ * This class is a page of RUMDbSearchEngine.searchPage(), with the token that resumes
+ * the ranking after its last movie.
+ *
+ * The token is opaque to callers. It holds the (distance, movie id) pair of the last
+ * movie, packed as by TopKHeap.pack(), in hexadecimal, so the next page does not
+ * depend on any state kept by the engine between the two calls.
+ */
+public class SearchPage {
+
+	private final ArrayList<MovieSearchResult> results;   // the page's movies, in rank order
+	private final String nextToken;                       // the next page's token, or null
+
+	public SearchPage ( ArrayList<MovieSearchResult> results, String nextToken ) {
+		this.results   = results;
+		this.nextToken = nextToken;
+	}
+
+	/*
+	 * @return the page's movies, sorted by increasing distance then increasing id
+	 */
+	public ArrayList<MovieSearchResult> getResults () {
+		return results;
+	}
+
+	/*
+	 * @return the token of the next page, or null if this page is the last one
+	 */
+	public String getNextToken () {
+		return nextToken;
+	}
+
+	/*
+	 * @return true if there may be a next page; it is empty if this page was full and
+	 * 		held the last movies
+	 */
+	public boolean hasMore () {
+		return nextToken != null;
+	}
+
+	/*
+	 * @return the token of the pair @pair, packed by TopKHeap.pack()
+	 */
+	static String token ( long pair ) {
+		return Long.toHexString(pair);
+	}
+
+	/*
+	 * @return the pair of @token
+	 * @throws IllegalArgumentException if @token is not a token of token()
+	 */
+	static long parseToken ( String token ) {
+		try {
+			long pair = Long.parseLong(token, 16);
+			if ( pair >= 0 && TopKHeap.docIdOf(pair) >= 0 ) {
+				return pair;
+			}
+		} catch ( NumberFormatException e ) {
+			// reported below
+		}
+		throw new IllegalArgumentException("not a page token: " + token);
+	}
+}
@@ -0,0 +1,85 @@
+package searchengine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/*
+ * This class gives the movies that contain two words one at a time, in increasing id
+ * order, as RUMDbSearchEngine.createMovieSearchResult() would list them.
+ *
+ * Nothing is built ahead. The movies are found by a leapfrog of the two words'
+ * PostingsCursors (DocIterator.and()): hasNext() advances the cursor of the rarer word
+ * to its next movie and the other cursor to that movie, until both agree, skipping the
+ * blocks in between through the skip data. next() makes the MovieSearchResult of that
+ * movie, copying its decoded locations only. So asking whether there is any match
+ * costs the blocks read up to the first common movie, and a caller that stops after a
+ * few movies never decodes, or even lists, the others.
+ *
+ * The iterator walks the postings as they are; words inserted while it is in use may
+ * or may not be seen.
+ */
+public class SearchResultIterator implements Iterator<MovieSearchResult> {
+
+	private final PostingsCursor a;           // the first word's cursor, null if none
+	private final PostingsCursor b;           // the second word's cursor, null if none
+	private final DocIterator both;           // the movies of both words, null if none
+	private final DocumentTable documents;    // the movies' titles
+	private int doc;                          // the next movie, -1 until hasNext() looks
+
+	/*
+	 * @param occA the first word's occurrences, or null if it is not in the table
+	 * @param occB the second word's occurrences, or null if it is not in the table
+	 * @param documents the table of the movies' titles
+	 */
+	public SearchResultIterator ( WordOccurrence occA, WordOccurrence occB, DocumentTable documents ) {
+		if ( occA == null || occB == null ) {
+			this.a = this.b = null;
+			this.both = null;
+		} else {
+			this.a = occA.cursor();
+			this.b = occB.cursor();
+			// the conjunction is walked from its first iterator, so the rarer word leads
+			this.both = a.cost() <= b.cost()
+					? DocIterator.and(Arrays.<DocIterator>asList(a, b), Collections.<DocIterator>emptyList())
+					: DocIterator.and(Arrays.<DocIterator>asList(b, a), Collections.<DocIterator>emptyList());
+		}
+		this.documents = documents;
+		this.doc       = both == null ? PostingsCursor.NO_MORE_DOCS : -1;
+	}
+
+	public boolean hasNext () {
+		if ( doc == -1 ) {
+			doc = both.nextDoc();
+		}
+		return doc != PostingsCursor.NO_MORE_DOCS;
+	}
+
+	/*
+	 * @return the next movie, with the locations of both words and no distance yet
+	 */
+	public MovieSearchResult next () {
+		if ( !hasNext() ) {
+			throw new NoSuchElementException();
+		}
+		MovieSearchResult res = new MovieSearchResult(doc, documents);
+		res.setOccurrencesA(Arrays.copyOf(a.positions(), a.freq()), 0, a.freq());
+		res.setOccurrencesB(Arrays.copyOf(b.positions(), b.freq()), 0, b.freq());
+		doc = -1;
+		return res;
+	}
+
+	/*
+	 * @return a sequential stream of the remaining movies, which pulls them from this
+	 * 		iterator as it is consumed
+	 */
+	public Stream<MovieSearchResult> stream () {
+		int characteristics = Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL;
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, characteristics), false);
+	}
+}
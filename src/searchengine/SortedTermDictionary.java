@@ -0,0 +1,377 @@
+package searchengine;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/*
+ * This class keeps the words of the table in sorted order, so that prefix and wildcard
+ * patterns such as "advent*", "*ship" or "wom?n" expand to the words they match in
+ * time proportional to the number of matches instead of a scan of every hash slot.
+ *
+ * Every word gets a term id, its rank in the sorted order. A prefix is two binary
+ * searches of the sorted words, which the WordOccurrences already hold. A suffix is a
+ * prefix of the reversed word, so the reversed words are kept sorted too, front coded:
+ * they are cut into blocks of BLOCK_SIZE, and each word only stores the length of the
+ * prefix it shares with the previous word in its block and the rest of its characters,
+ * so sorted words with common endings ("-ing", "-tion") take little room. The first word
+ * of a block is stored whole, and a lookup binary searches those before decoding a
+ * single block forward.
+ *
+ * Other patterns expand the longer of their literal prefix and suffix, and the
+ * candidates are then matched against the whole pattern.
+ *
+ * Misspelled words are expanded by running a LevenshteinAutomaton over the sorted
+ * words, reusing its states along the prefix a word shares with the previous one and
+ * skipping every word of a prefix the automaton rejects.
+ *
+ * Words added to the table after the dictionary was built are not sorted into it
+ * again: withAdded() gives a dictionary that shares the sorted words and front coded
+ * blocks and holds the new words in a small sorted delta, which every lookup scans and
+ * merges in. Their term ids follow those of the sorted words.
+ *
+ * The dictionary is immutable and only sees the words present when it was built.
+ */
+public class SortedTermDictionary {
+
+	public static final int BLOCK_SIZE = 16;
+
+	private static final int[] NO_TERMS = new int[0];
+
+	private static final WordOccurrence[] NO_WORDS = new WordOccurrence[0];
+
+	private static final Comparator<WordOccurrence> BY_WORD = new Comparator<WordOccurrence>() {
+		public int compare ( WordOccurrence a, WordOccurrence b ) {
+			return a.getWord().compareTo(b.getWord());
+		}
+	};
+
+	private final WordOccurrence[] terms;   // term id -> word, in word order
+
+	private final char[] reversed;          // the front coded reversed words
+	private final int[]  blockStarts;       // index in reversed of each block's first word
+	private final int[]  reversedIds;       // i-th reversed word -> term id
+
+	private final WordOccurrence[] added;   // the delta: term id - terms.length -> word, in word order
+
+	/*
+	 * @param words the words of the table, each at most once
+	 */
+	public SortedTermDictionary ( WordOccurrence[] words ) {
+		this.terms = words.clone();
+		Arrays.sort(terms, BY_WORD);
+
+		final String[] backwards = new String[terms.length];
+		Integer[] order = new Integer[terms.length];
+		int chars = 0;
+		for ( int i = 0; i < terms.length; i++ ) {
+			backwards[i] = new StringBuilder(terms[i].getWord()).reverse().toString();
+			order[i] = i;
+			chars += 2 + backwards[i].length();
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare ( Integer a, Integer b ) {
+				return backwards[a].compareTo(backwards[b]);
+			}
+		});
+
+		char[] data = new char[chars];
+		this.blockStarts = new int[(terms.length + BLOCK_SIZE - 1) / BLOCK_SIZE];
+		this.reversedIds = new int[terms.length];
+		int n = 0;
+		String previous = "";
+		for ( int i = 0; i < terms.length; i++ ) {
+			String word = backwards[order[i]];
+			int shared = 0;
+			if ( i % BLOCK_SIZE == 0 ) {
+				blockStarts[i / BLOCK_SIZE] = n;
+			} else {
+				int max = Math.min(previous.length(), word.length());
+				while ( shared < max && previous.charAt(shared) == word.charAt(shared) ) {
+					shared++;
+				}
+			}
+			data[n++] = (char) shared;
+			data[n++] = (char) (word.length() - shared);
+			word.getChars(shared, word.length(), data, n);
+			n += word.length() - shared;
+			reversedIds[i] = order[i];
+			previous = word;
+		}
+		this.reversed = Arrays.copyOf(data, n);
+		this.added    = NO_WORDS;
+	}
+
+	private SortedTermDictionary ( SortedTermDictionary base, WordOccurrence[] added ) {
+		this.terms       = base.terms;
+		this.reversed    = base.reversed;
+		this.blockStarts = base.blockStarts;
+		this.reversedIds = base.reversedIds;
+		this.added       = added;
+	}
+
+	/*
+	 * @param words words that are not in this dictionary, each at most once
+	 * @return this dictionary's sorted words with @words as its delta, in place of any
+	 * 		delta this dictionary has
+	 */
+	public SortedTermDictionary withAdded ( WordOccurrence[] words ) {
+		WordOccurrence[] sorted = words.clone();
+		Arrays.sort(sorted, BY_WORD);
+		return new SortedTermDictionary(this, sorted);
+	}
+
+	/*
+	 * @return the number of words, with the delta
+	 */
+	public int size () {
+		return terms.length + added.length;
+	}
+
+	/*
+	 * @param id a term id, 0 <= id < size()
+	 * @return the word's occurrences
+	 */
+	public WordOccurrence getTerm ( int id ) {
+		return id < terms.length ? terms[id] : added[id - terms.length];
+	}
+
+	/*
+	 * Finds the words matching @pattern, where '*' matches any number of characters
+	 * and '?' matches one. A pattern without them matches at most the word itself.
+	 *
+	 * @param pattern the pattern, in lower case
+	 * @return the term ids of the matching words, in increasing order
+	 */
+	public int[] expand ( String pattern ) {
+		int[] ids = expandSorted(pattern);
+		if ( added.length == 0 ) {
+			return ids;
+		}
+		boolean wildcards = firstWildcard(pattern) >= 0;
+		int n = ids.length;
+		for ( int i = 0; i < added.length; i++ ) {
+			String word = added[i].getWord();
+			if ( wildcards ? matches(pattern, word) : word.equals(pattern) ) {
+				if ( n == ids.length ) {
+					ids = Arrays.copyOf(ids, Math.max(4, n * 2));
+				}
+				ids[n++] = terms.length + i;
+			}
+		}
+		return n == ids.length ? ids : Arrays.copyOf(ids, n);
+	}
+
+	/*
+	 * expand() over the sorted words only.
+	 */
+	private int[] expandSorted ( String pattern ) {
+		int first = firstWildcard(pattern);
+		if ( first < 0 ) {
+			int lo = lowerBound(pattern);
+			return lo < terms.length && terms[lo].getWord().equals(pattern) ? new int[] { lo } : NO_TERMS;
+		}
+		int last = pattern.length() - 1;
+		while ( pattern.charAt(last) != '*' && pattern.charAt(last) != '?' ) {
+			last--;
+		}
+		String prefix = pattern.substring(0, first);
+		String suffix = pattern.substring(last + 1);
+		// "prefix*" and "*suffix" match every candidate, other patterns are checked
+		boolean exact = first == last && pattern.charAt(first) == '*'
+				&& (prefix.isEmpty() || suffix.isEmpty());
+
+		int[] ids;
+		if ( prefix.length() >= suffix.length() ) {
+			int lo = lowerBound(prefix);
+			int hi = lowerBound(prefix + Character.MAX_VALUE);
+			ids = new int[hi - lo];
+			for ( int i = lo; i < hi; i++ ) {
+				ids[i - lo] = i;
+			}
+		} else {
+			ids = withReversedPrefix(new StringBuilder(suffix).reverse().toString());
+			Arrays.sort(ids);
+		}
+		if ( exact ) {
+			return ids;
+		}
+		int n = 0;
+		for ( int id : ids ) {
+			if ( matches(pattern, terms[id].getWord()) ) {
+				ids[n++] = id;
+			}
+		}
+		return n == ids.length ? ids : Arrays.copyOf(ids, n);
+	}
+
+	/*
+	 * Finds the words that @automaton accepts.
+	 *
+	 * @param automaton the automaton of a word and a number of edits
+	 * @return the term ids of the accepted words, in increasing order
+	 */
+	public int[] fuzzy ( LevenshteinAutomaton automaton ) {
+		int[] ids = new int[16];
+		int n = 0;
+		int[][] rows = new int[16][];    // rows[d]: the state after d characters of word
+		rows[0] = automaton.start();
+		String previous = "";
+		int valid = 0;                   // rows[0, valid] hold previous's prefixes
+		int i = 0;
+		while ( i < terms.length ) {
+			String word = terms[i].getWord();
+			int d = 0;
+			while ( d < valid && d < word.length() && previous.charAt(d) == word.charAt(d) ) {
+				d++;
+			}
+			boolean rejected = false;
+			for ( ; d < word.length(); d++ ) {
+				if ( d + 1 == rows.length ) {
+					rows = Arrays.copyOf(rows, rows.length * 2);
+				}
+				if ( rows[d + 1] == null ) {
+					rows[d + 1] = new int[rows[0].length];
+				}
+				automaton.step(rows[d], word.charAt(d), rows[d + 1]);
+				if ( !automaton.canMatch(rows[d + 1]) ) {
+					rejected = true;
+					break;
+				}
+			}
+			previous = word;
+			if ( rejected ) {
+				valid = d + 1;
+				i = lowerBound(word.substring(0, d + 1) + Character.MAX_VALUE);
+				continue;
+			}
+			valid = word.length();
+			if ( automaton.distance(rows[valid]) <= automaton.getMaxEdits() ) {
+				if ( n == ids.length ) {
+					ids = Arrays.copyOf(ids, n * 2);
+				}
+				ids[n++] = i;
+			}
+			i++;
+		}
+		for ( int a = 0; a < added.length; a++ ) {
+			if ( automaton.distance(added[a].getWord()) <= automaton.getMaxEdits() ) {
+				if ( n == ids.length ) {
+					ids = Arrays.copyOf(ids, n * 2);
+				}
+				ids[n++] = terms.length + a;
+			}
+		}
+		return Arrays.copyOf(ids, n);
+	}
+
+	/*
+	 * @return the index of the first '*' or '?' in @pattern, or -1 if there is none
+	 */
+	private static int firstWildcard ( String pattern ) {
+		for ( int i = 0; i < pattern.length(); i++ ) {
+			if ( pattern.charAt(i) == '*' || pattern.charAt(i) == '?' ) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/*
+	 * @return the index of the first word >= @word, or size() if there is none
+	 */
+	private int lowerBound ( String word ) {
+		int lo = 0, hi = terms.length;
+		while ( lo < hi ) {
+			int mid = (lo + hi) >>> 1;
+			if ( terms[mid].getWord().compareTo(word) < 0 ) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/*
+	 * @return the term ids of the words whose reversed word starts with @prefix
+	 */
+	private int[] withReversedPrefix ( String prefix ) {
+		// the last block whose first word is < prefix holds the first match, if any
+		int lo = 0, hi = blockStarts.length - 1;
+		while ( lo < hi ) {
+			int mid = (lo + hi + 1) >>> 1;
+			int at = blockStarts[mid];
+			if ( compare(reversed, at + 2, reversed[at + 1], prefix) < 0 ) {
+				lo = mid;
+			} else {
+				hi = mid - 1;
+			}
+		}
+
+		int[] ids = new int[16];
+		int n = 0;
+		char[] word = new char[64];
+		int length = 0;
+		int at = blockStarts.length == 0 ? reversed.length : blockStarts[lo];
+		for ( int i = lo * BLOCK_SIZE; at < reversed.length; i++ ) {
+			int shared = reversed[at];
+			int rest   = reversed[at + 1];
+			if ( shared + rest > word.length ) {
+				word = Arrays.copyOf(word, (shared + rest) * 2);
+			}
+			System.arraycopy(reversed, at + 2, word, shared, rest);
+			length = shared + rest;
+			at += 2 + rest;
+
+			int cmp = compare(word, 0, Math.min(length, prefix.length()), prefix);
+			if ( cmp == 0 && length >= prefix.length() ) {
+				if ( n == ids.length ) {
+					ids = Arrays.copyOf(ids, n * 2);
+				}
+				ids[n++] = reversedIds[i];
+			} else if ( cmp > 0 ) {
+				break;
+			}
+		}
+		return Arrays.copyOf(ids, n);
+	}
+
+	/*
+	 * Compares a[start, start + length) with @s.
+	 */
+	private static int compare ( char[] a, int start, int length, String s ) {
+		int n = Math.min(length, s.length());
+		for ( int i = 0; i < n; i++ ) {
+			if ( a[start + i] != s.charAt(i) ) {
+				return a[start + i] - s.charAt(i);
+			}
+		}
+		return length - s.length();
+	}
+
+	/*
+	 * @return true if @word matches @pattern as a whole
+	 */
+	static boolean matches ( String pattern, String word ) {
+		int p = 0, w = 0;
+		int star = -1, resume = 0;   // the last '*' seen, and where its match ends
+		while ( w < word.length() ) {
+			if ( p < pattern.length() && (pattern.charAt(p) == '?' || pattern.charAt(p) == word.charAt(w)) ) {
+				p++;
+				w++;
+			} else if ( p < pattern.length() && pattern.charAt(p) == '*' ) {
+				star   = p++;
+				resume = w;
+			} else if ( star >= 0 ) {
+				p = star + 1;
+				w = ++resume;
+			} else {
+				return false;
+			}
+		}
+		while ( p < pattern.length() && pattern.charAt(p) == '*' ) {
+			p++;
+		}
+		return p == pattern.length();
+	}
+}
@@ -0,0 +1,408 @@
+package searchengine;
+
+import java.util.Arrays;
+
+/*
+ * This class maps words to their WordOccurrence objects using open addressing with
+ * linear probing.
+ *
+ * Instead of chaining WordOccurrence objects through a linked list, the table keeps two
+ * parallel int arrays: the full hash code of the word stored in each slot, and the id of
+ * the term stored in that slot. Term ids index the terms array, so a probe only touches
+ * the two int arrays until the hash codes match, and String.equals runs (almost) only on
+ * the word that is actually being searched for.
+ *
+ * The capacity is always a power of two so that a slot is found with a mask instead of
+ * a division.
+ *
+ * Words are stored in lower case. Lookups accept a CharSequence or a char[] slice, fold
+ * its case while hashing and comparing, and never allocate.
+ *
+ * Resizing is incremental: resize() allocates the new table and keeps the old one, and
+ * every following add() or get() moves at most MIGRATE_STEP slots from the old table
+ * into the new one. Until the old table is drained, lookups that miss the new table
+ * also probe the old one. Because a resize doubles the table, the old table is always
+ * drained long before the new one reaches its load factor threshold.
+ *
+ * The dictionary is not thread-safe. peek() is the only method that never writes, and it
+ * never fails when another thread modifies the dictionary at the same time: it may then
+ * return a wrong answer, which callers detect with an optimistic lock (see
+ * ConcurrentRUMDbSearchEngine).
+ */
+public class TermDictionary {
+
+	private static final int EMPTY        = -1; // marks a free slot in ids
+	private static final int MIGRATE_STEP = 16; // slots moved per add() or get() while resizing
+
+	private Slots table;              // the table new words are added to
+	private Slots oldTable;           // table being drained by a resize, null otherwise
+	private int   migrated;           // slots of oldTable already moved into table
+	private WordOccurrence[] terms;   // term id -> WordOccurrence
+	private int   size;               // number of terms in the dictionary
+
+	/*
+	 * Constructor initializes an empty dictionary.
+	 *
+	 * @param capacity the minimum number of slots, rounded up to a power of two
+	 */
+	public TermDictionary ( int capacity ) {
+		int slots = tableSizeFor(capacity);
+		this.table    = new Slots(slots);
+		this.oldTable = null;
+		this.terms    = new WordOccurrence[Math.max(16, slots / 2)];
+		this.size     = 0;
+	}
+
+	/*
+	 * @return the number of slots in the table
+	 */
+	public int capacity () {
+		return table.ids.length;
+	}
+
+	/*
+	 * @return the number of terms in the dictionary
+	 */
+	public int size () {
+		return size;
+	}
+
+	/*
+	 * @return true while an incremental resize is still draining the old table
+	 */
+	public boolean isResizing () {
+		return oldTable != null;
+	}
+
+	/*
+	 * Returns the term stored at @slot. Any pending resize is completed first so that
+	 * every term is reachable through the slots of the current table.
+	 *
+	 * @param slot a table slot, 0 <= slot < capacity()
+	 * @return the WordOccurrence at @slot, or null if the slot is free
+	 */
+	public WordOccurrence getSlot ( int slot ) {
+		finishResize();
+		int id = table.ids[slot];
+		return id == EMPTY ? null : terms[id];
+	}
+
+	/*
+	 * Returns the term with id @id.
+	 * @param id a term id, 0 <= id < size()
+	 * @return the WordOccurrence with that id
+	 */
+	public WordOccurrence getTerm ( int id ) {
+		return terms[id];
+	}
+
+	/*
+	 * Finds the WordOccurrence for the word in @word[start, end), ignoring case.
+	 *
+	 * @param word holds the word to search for
+	 * @param start index of the first character of the word
+	 * @param end index after the last character of the word
+	 * @param hash the hash code of the word, as computed by hash(word, start, end)
+	 * @return the WordOccurrence of the word, or null if it is not in the dictionary
+	 */
+	public WordOccurrence get ( CharSequence word, int start, int end, int hash ) {
+		migrate();
+		return peek(word, start, end, hash);
+	}
+
+	/*
+	 * Finds the WordOccurrence for the word in @word[offset, offset+length), ignoring case.
+	 *
+	 * @param word holds the word to search for
+	 * @param offset index of the first character of the word
+	 * @param length number of characters in the word
+	 * @param hash the hash code of the word, as computed by hash(word, offset, length)
+	 * @return the WordOccurrence of the word, or null if it is not in the dictionary
+	 */
+	public WordOccurrence get ( char[] word, int offset, int length, int hash ) {
+		migrate();
+		return peek(word, offset, length, hash);
+	}
+
+	/*
+	 * Same as get(word, start, end, hash), but never moves slots of a pending resize.
+	 */
+	public WordOccurrence peek ( CharSequence word, int start, int end, int hash ) {
+		Slots old = oldTable;
+		WordOccurrence occ = find(table, word, start, end, hash);
+		if ( occ == null && old != null ) {
+			occ = find(old, word, start, end, hash);
+		}
+		return occ;
+	}
+
+	/*
+	 * Same as get(word, offset, length, hash), but never moves slots of a pending resize.
+	 */
+	public WordOccurrence peek ( char[] word, int offset, int length, int hash ) {
+		Slots old = oldTable;
+		WordOccurrence occ = find(table, word, offset, length, hash);
+		if ( occ == null && old != null ) {
+			occ = find(old, word, offset, length, hash);
+		}
+		return occ;
+	}
+
+	/*
+	 * Adds a new term to the dictionary. The caller must make sure that the word is not
+	 * already present and that the table has at least one free slot.
+	 *
+	 * @param occ the WordOccurrence of the new word
+	 * @param hash the hash code of the word
+	 */
+	public void add ( WordOccurrence occ, int hash ) {
+		migrate();
+		if ( size == terms.length ) {
+			WordOccurrence[] grown = new WordOccurrence[terms.length * 2];
+			System.arraycopy(terms, 0, grown, 0, size);
+			terms = grown;
+		}
+		terms[size] = occ;
+		table.place(hash, size);
+		size++;
+	}
+
+	/*
+	 * Starts resizing the table to @newCapacity slots. Only the hash codes and term ids
+	 * are moved, the WordOccurrence objects are left untouched. The slots are moved a few
+	 * at a time by later calls to add() and get(); a resize that is still in progress is
+	 * completed before the next one starts.
+	 *
+	 * @param newCapacity the minimum number of slots, rounded up to a power of two
+	 */
+	public void resize ( int newCapacity ) {
+		finishResize();
+		oldTable = table;
+		table    = new Slots(tableSizeFor(Math.max(newCapacity, size + 1)));
+		migrated = 0;
+	}
+
+	/*
+	 * Moves every remaining slot of the old table into the new one.
+	 */
+	public void finishResize () {
+		while ( oldTable != null ) {
+			migrate();
+		}
+	}
+
+	/*
+	 * Moves at most MIGRATE_STEP slots of the old table into the new one, and drops the
+	 * old table once it has been drained.
+	 */
+	private void migrate () {
+		if ( oldTable == null ) {
+			return;
+		}
+		int end = Math.min(migrated + MIGRATE_STEP, oldTable.ids.length);
+		for ( ; migrated < end; migrated++ ) {
+			if ( oldTable.ids[migrated] != EMPTY ) {
+				table.place(oldTable.hashes[migrated], oldTable.ids[migrated]);
+			}
+		}
+		if ( migrated == oldTable.ids.length ) {
+			oldTable = null;
+		}
+	}
+
+	/*
+	 * @return the WordOccurrence of the word in @word[start, end) within table @t, or null
+	 */
+	private WordOccurrence find ( Slots t, CharSequence word, int start, int end, int hash ) {
+		WordOccurrence[] ts = terms;
+		for ( int i = t.slotFor(hash); ; i = (i + 1) & t.mask ) {
+			int id = t.ids[i];
+			if ( id == EMPTY ) {
+				return null;
+			}
+			if ( t.hashes[i] == hash && id < ts.length ) {
+				WordOccurrence occ = ts[id];
+				if ( occ != null && matches(occ.getWord(), word, start, end) ) {
+					return occ;
+				}
+			}
+		}
+	}
+
+	/*
+	 * @return the WordOccurrence of the word in @word[offset, offset+length) within
+	 * table @t, or null
+	 */
+	private WordOccurrence find ( Slots t, char[] word, int offset, int length, int hash ) {
+		WordOccurrence[] ts = terms;
+		for ( int i = t.slotFor(hash); ; i = (i + 1) & t.mask ) {
+			int id = t.ids[i];
+			if ( id == EMPTY ) {
+				return null;
+			}
+			if ( t.hashes[i] == hash && id < ts.length ) {
+				WordOccurrence occ = ts[id];
+				if ( occ != null && matches(occ.getWord(), word, offset, length) ) {
+					return occ;
+				}
+			}
+		}
+	}
+
+	/*
+	 * Computes the hash code of @word[start, end) in lower case. For lower case words
+	 * this is the same value as String.hashCode().
+	 *
+	 * @return the case-folded hash code
+	 */
+	public static int hash ( CharSequence word, int start, int end ) {
+		int h = 0;
+		for ( int i = start; i < end; i++ ) {
+			h = 31 * h + fold(word.charAt(i));
+		}
+		return h;
+	}
+
+	/*
+	 * Computes the hash code of @word[offset, offset+length) in lower case.
+	 *
+	 * @return the case-folded hash code
+	 */
+	public static int hash ( char[] word, int offset, int length ) {
+		int h = 0;
+		for ( int i = offset; i < offset + length; i++ ) {
+			h = 31 * h + fold(word[i]);
+		}
+		return h;
+	}
+
+	/*
+	 * Computes a 64-bit hash code of @word[start, end) in lower case, for structures that
+	 * need more (or more independent) bits than hash() provides.
+	 *
+	 * @return the case-folded 64-bit hash code
+	 */
+	public static long hash64 ( CharSequence word, int start, int end ) {
+		long h = 1125899906842597L;
+		for ( int i = start; i < end; i++ ) {
+			h = 31 * h + fold(word.charAt(i));
+		}
+		return mix64(h);
+	}
+
+	/*
+	 * Computes a 64-bit hash code of @word[offset, offset+length) in lower case.
+	 *
+	 * @return the case-folded 64-bit hash code
+	 */
+	public static long hash64 ( char[] word, int offset, int length ) {
+		long h = 1125899906842597L;
+		for ( int i = offset; i < offset + length; i++ ) {
+			h = 31 * h + fold(word[i]);
+		}
+		return mix64(h);
+	}
+
+	/*
+	 * 64-bit finalizer from MurmurHash3, spreads @h over all bits.
+	 */
+	public static long mix64 ( long h ) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb93fe53f4e53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/*
+	 * @return @ch in lower case, with a fast path for ASCII letters
+	 */
+	public static char fold ( char ch ) {
+		if ( ch < 128 ) {
+			return ch >= 'A' && ch <= 'Z' ? (char) (ch + ('a' - 'A')) : ch;
+		}
+		return Character.toLowerCase(ch);
+	}
+
+	/*
+	 * @return true if the stored (lower case) @term equals @word[start, end) after folding
+	 */
+	public static boolean matches ( String term, CharSequence word, int start, int end ) {
+		if ( term.length() != end - start ) {
+			return false;
+		}
+		for ( int i = 0; i < term.length(); i++ ) {
+			if ( term.charAt(i) != fold(word.charAt(start + i)) ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * @return true if the stored (lower case) @term equals @word[offset, offset+length)
+	 * after folding
+	 */
+	public static boolean matches ( String term, char[] word, int offset, int length ) {
+		if ( term.length() != length ) {
+			return false;
+		}
+		for ( int i = 0; i < length; i++ ) {
+			if ( term.charAt(i) != fold(word[offset + i]) ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * @return the smallest power of two >= @capacity (at least 2)
+	 */
+	private static int tableSizeFor ( int capacity ) {
+		int n = 2;
+		while ( n < capacity ) {
+			n <<= 1;
+		}
+		return n;
+	}
+
+	/*
+	 * One generation of the table: the hash code and term id of every slot.
+	 */
+	private static class Slots {
+
+		final int[] hashes; // hash code of the word stored in each slot
+		final int[] ids;    // term id stored in each slot, EMPTY if the slot is free
+		final int   mask;   // capacity - 1
+
+		Slots ( int slots ) {
+			this.hashes = new int[slots];
+			this.ids    = new int[slots];
+			this.mask   = slots - 1;
+			Arrays.fill(ids, EMPTY);
+		}
+
+		/*
+		 * Maps a hash code to its home slot. The hash is spread first so that String hash
+		 * codes, whose low bits are poorly distributed for short words, still cover the
+		 * table.
+		 */
+		int slotFor ( int hash ) {
+			int h = hash * 0x9E3779B9;
+			return (h ^ (h >>> 16)) & mask;
+		}
+
+		/*
+		 * Stores (@hash, @id) in the first free slot of the probe sequence for @hash.
+		 */
+		void place ( int hash, int id ) {
+			int i = slotFor(hash);
+			while ( ids[i] != EMPTY ) {
+				i = (i + 1) & mask;
+			}
+			hashes[i] = hash;
+			ids[i]    = id;
+		}
+	}
+}
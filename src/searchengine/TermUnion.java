@@ -0,0 +1,97 @@
+package searchengine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * This class walks the movies that contain any of a few words, such as the expansion
+ * of a wildcard pattern, and gives the positions of all of them in the current movie
+ * as if they were one word.
+ *
+ * The movies come from a DocIterator.or of the words' cursors. The positions are only
+ * merged when asked for, from the cursors that are on the current movie, so movies
+ * that a conjunction skips cost nothing.
+ */
+public class TermUnion extends DocIterator {
+
+	private final PostingsCursor[] cursors;   // a cursor per word
+	private final DocIterator union;          // the movies of any word
+	private int[] positions;                  // merged positions, valid for mergedDoc
+	private int   freq;                       // number of merged positions
+	private int   mergedDoc;                  // the movie positions belong to
+
+	/*
+	 * @param words the words' occurrences, at least one, each at most once
+	 */
+	public TermUnion ( WordOccurrence[] words ) {
+		this.cursors = new PostingsCursor[words.length];
+		ArrayList<DocIterator> any = new ArrayList<DocIterator>(words.length);
+		for ( int i = 0; i < words.length; i++ ) {
+			cursors[i] = words[i].cursor();
+			any.add(cursors[i]);
+		}
+		this.union     = words.length == 1 ? cursors[0] : DocIterator.or(any);
+		this.positions = new int[16];
+		this.mergedDoc = -1;
+	}
+
+	public int docId () {
+		return union.docId();
+	}
+
+	public int nextDoc () {
+		return union.nextDoc();
+	}
+
+	public int advance ( int target ) {
+		return union.advance(target);
+	}
+
+	public long cost () {
+		return union.cost();
+	}
+
+	/*
+	 * @return the positions of the words in the current movie, in increasing order,
+	 * 		from index 0 to freq(); the array is reused for the next movie
+	 */
+	public int[] positions () {
+		if ( cursors.length == 1 ) {
+			return cursors[0].positions();
+		}
+		merge();
+		return positions;
+	}
+
+	/*
+	 * @return the number of positions of the words in the current movie
+	 */
+	public int freq () {
+		if ( cursors.length == 1 ) {
+			return cursors[0].freq();
+		}
+		merge();
+		return freq;
+	}
+
+	private void merge () {
+		int doc = union.docId();
+		if ( mergedDoc == doc ) {
+			return;
+		}
+		freq = 0;
+		for ( PostingsCursor cursor : cursors ) {
+			if ( cursor.docId() == doc ) {
+				int n = cursor.freq();
+				if ( freq + n > positions.length ) {
+					positions = Arrays.copyOf(positions, Math.max(freq + n, positions.length * 2));
+				}
+				System.arraycopy(cursor.positions(), 0, positions, freq, n);
+				freq += n;
+			}
+		}
+		// every word has its own positions, so there are no duplicates to drop
+		Arrays.sort(positions, 0, freq);
+		mergedDoc = doc;
+	}
+}
@@ -0,0 +1,126 @@
+package searchengine;
+
+import java.util.Arrays;
+
+/*
+ * This class keeps the K best (rank, movie id) pairs offered to it, where a lower rank
+ * is better and ties go to the lower movie id.
+ *
+ * Each pair is packed in a long, rank in the high 32 bits and id in the low 32 bits,
+ * so comparing two pairs is comparing two longs. The pairs are kept in a binary
+ * max-heap of at most K longs: the root is the worst pair kept, which a better pair
+ * replaces in O(log K). So a search over N movies costs O(N log K) instead of O(N K)
+ * for a sorted list.
+ */
+public class TopKHeap {
+
+	private final int k;      // the number of pairs to keep
+	private long[] heap;      // max-heap of packed pairs
+	private int size;         // number of pairs kept
+
+	/*
+	 * @param k the number of pairs to keep, >= 0
+	 */
+	public TopKHeap ( int k ) {
+		if ( k < 0 ) {
+			throw new IllegalArgumentException("k must be >= 0: " + k);
+		}
+		this.k    = k;
+		this.heap = new long[Math.min(k, 16)];
+	}
+
+	/*
+	 * @param rank >= 0, lower is better
+	 * @param docId the movie's id, >= 0
+	 * @return the pair packed as a long
+	 */
+	public static long pack ( int rank, int docId ) {
+		return (long) rank << 32 | docId;
+	}
+
+	/*
+	 * @return the rank of a packed pair
+	 */
+	public static int rankOf ( long pair ) {
+		return (int) (pair >>> 32);
+	}
+
+	/*
+	 * @return the movie id of a packed pair
+	 */
+	public static int docIdOf ( long pair ) {
+		return (int) pair;
+	}
+
+	/*
+	 * @return the number of pairs kept
+	 */
+	public int size () {
+		return size;
+	}
+
+	/*
+	 * @return true if K pairs are kept
+	 */
+	public boolean isFull () {
+		return size == k;
+	}
+
+	/*
+	 * @return the worst pair kept, the one a new pair must beat once the heap is full
+	 */
+	public long worst () {
+		return heap[0];
+	}
+
+	/*
+	 * Keeps (@rank, @docId) if fewer than K pairs are kept or it beats the worst one,
+	 * which it then replaces.
+	 * @return true if the pair is kept
+	 */
+	public boolean offer ( int rank, int docId ) {
+		long pair = pack(rank, docId);
+		if ( size < k ) {
+			if ( size == heap.length ) {
+				heap = Arrays.copyOf(heap, Math.min(k, size * 2));
+			}
+			int h = size++;
+			while ( h > 0 && heap[(h - 1) / 2] < pair ) {
+				heap[h] = heap[(h - 1) / 2];
+				h = (h - 1) / 2;
+			}
+			heap[h] = pair;
+			return true;
+		}
+		if ( k == 0 || pair >= heap[0] ) {
+			return false;
+		}
+
+		int h = 0;
+		while ( true ) {
+			int child = 2 * h + 1;
+			if ( child >= size ) {
+				break;
+			}
+			if ( child + 1 < size && heap[child + 1] > heap[child] ) {
+				child++;
+			}
+			if ( heap[child] <= pair ) {
+				break;
+			}
+			heap[h] = heap[child];
+			h = child;
+		}
+		heap[h] = pair;
+		return true;
+	}
+
+	/*
+	 * @return the pairs kept, best first
+	 */
+	public long[] sorted () {
+		long[] pairs = Arrays.copyOf(heap, size);
+		Arrays.sort(pairs);
+		return pairs;
+	}
+}
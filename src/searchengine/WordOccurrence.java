@@ -1,97 +1,476 @@
-package searchengine;
-
-import java.util.ArrayList;
-
-/*
- *
- * This class represents the occurrences of a word in every movie description it appears.
- * 
- * @author Haolin (Daniel) Jin
- */ 
-
-public class WordOccurrence {
-
-	private String word;                   // the word
-	private ArrayList<Location> locations; // all locations where the word occurs
-	public WordOccurrence next;
-
-	public WordOccurrence ( String word ) {
-		this.word = word;
-		locations = new ArrayList<Location>();
-		next = null;
-	}
-
-	/*
-	 * Returns the word
-	 * @return word
-	 */
-	public String getWord (){
-		return word;
-	}
-
-	/*
-	 * Returns all location where word occurs.
-	 * @return array containing word's locations.
-	 */
-	public ArrayList<Location> getLocations (){
-		return locations;
-	}
-
-	/*
-	 * Inserts a new occurrence of @word.
-	 * @title the movie's title where @word is located.
-	 * @position word's position in the movie's description.
-	 */ 
-	public void addOccurrence(String title, int position){
-		locations.add(new Location(title, position));
-	}
-	
-	/*
-	 * Inserts a new ocurrence of @word
-	 * @location where @word occurs
-	 */
-	public void addOccurrence(Location location){
-		locations.add(location);
-	}
-
-	/*
-	 * Returns true if @this equals @other
-	 * @other another WordOccurrence object.
-	 * @return true if @this equals @other
-	 */ 
-	public boolean equals ( Object other ) {
-
-		if ( !(other instanceof WordOccurrence) )
-			return false;
-
-		WordOccurrence o = (WordOccurrence) other;
-
-		if ( !word.equals(o.getWord()) ) 
-			return false;
-
-		for ( int i = 0; i < locations.size(); i++ ) {
-			if ( !locations.get(i).equals(o.getLocations().get(i)) ) {
-				return false;
-			}
-		}
-		return true;
-	}
-
-	/*
-	 * Returns the string representation of the WordOccurrence object.
-	 * @return the string representing this object.
-	 */
-	public String toString() {
-
-		String ret = "[" + word + ":";
-
-		for ( int i = 0; i < locations.size(); i++ ) {
-			Location loc = locations.get(i);
-			ret += loc.toString();
-			if ( i < locations.size()-1 ) ret += ",";
-		}
-
-		ret += "]";
-		return ret;
-	}
-}
\ No newline at end of file
+package searchengine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ *
+ * This class represents the occurrences of a word in every movie description it appears.
+ *
+ * The ids (see DocumentTable) of the movies containing the word are kept in increasing
+ * order, with the number of times the word occurs in each (its frequency). They are cut
+ * into blocks of PForCodec.BLOCK_SIZE movies; a full block stores its id gaps and its
+ * frequencies PFor-encoded in blockData, and skipData holds, for every block, its last
+ * movie id and where the block and its positions end, so a PostingsCursor can skip a
+ * whole block without decoding it. The movies after the last full block stay in the
+ * tail array until the block fills up.
+ *
+ * The positions of the word are a separate byte stream: for each movie in order, the
+ * gaps between its positions as variable-byte ints (the first gap counted from -1).
+ *
+ * The set of movies is also kept as a DocBitmap, so the movies containing two words can
+ * be found without decoding either word's postings.
+ *
+ * Locations that come out of order, as several threads inserting at once produce, are
+ * not encoded right away: they wait, unencoded, in a pending buffer that is sorted and
+ * merged into the postings in one pass, before the postings are next read or once the
+ * buffer holds a quarter as many locations as there are movies to encode again. A
+ * merge keeps the full blocks before the first pending movie and only encodes the
+ * postings from there on, which for concurrent loads are the last few blocks. So each
+ * location costs a constant amortized share of a merge instead of a rebuild of the
+ * whole word.
+ *
+ * @author Haolin (Daniel) Jin
+ */
+
+public class WordOccurrence {
+
+	private static final byte[] NO_BLOCKS = new byte[0];
+	private static final int[]  NO_SKIPS  = new int[0];
+
+	private final String        word;      // the word
+	private final DocumentTable documents; // resolves movie ids to titles
+	private byte[] blockData;              // the encoded full blocks
+	private int    blockLength;            // number of bytes used in blockData
+	private int[]  skipData;               // per block: last movie id, end in blockData, end in positions
+	private int    blockCount;             // number of full blocks
+	private int[]  tail;                   // movies after the full blocks: id, frequency, id, ...
+	private int    tailCount;              // number of movies in tail
+	private byte[] positions;              // the encoded positions
+	private int    positionLength;         // number of bytes used in positions
+	private int    docCount;               // number of movies containing the word
+	private DocBitmap docSet;              // the movies containing the word
+	private int    positionCount;          // number of locations
+	private int    lastDoc;                // id of the last movie appended, -1 if none
+	private int    lastPosition;           // last position appended to lastDoc
+	private long[] pending;                // locations out of order: docId << 32 | position
+	private volatile int pendingCount;     // number of locations in pending
+	private int    pendingFirst;           // the smallest movie id in pending
+	private boolean merging;               // true while merge() reads the postings
+
+	public WordOccurrence ( String word, DocumentTable documents ) {
+		this.word      = word;
+		this.documents = documents;
+		this.blockData = NO_BLOCKS;
+		this.skipData  = NO_SKIPS;
+		this.tail      = new int[2];
+		this.positions = new byte[4];
+		this.docSet    = new DocBitmap();
+		this.lastDoc      = -1;
+		this.lastPosition = -1;
+	}
+
+	/*
+	 * Returns the word
+	 * @return word
+	 */
+	public String getWord (){
+		return word;
+	}
+
+	/*
+	 * Returns all location where word occurs. The list is built on every call, prefer
+	 * cursor() in performance sensitive code.
+	 * @return array containing word's locations.
+	 */
+	public ArrayList<Location> getLocations (){
+		settle();
+		ArrayList<Location> locations = new ArrayList<Location>(positionCount);
+		PostingsCursor cursor = cursor();
+		for ( int doc = cursor.nextDoc(); doc != PostingsCursor.NO_MORE_DOCS; doc = cursor.nextDoc() ) {
+			String title = documents.getTitle(doc);
+			int[] places = cursor.positions();
+			for ( int p = 0; p < cursor.freq(); p++ ) {
+				locations.add(new Location(title, places[p]));
+			}
+		}
+		return locations;
+	}
+
+	/*
+	 * @return a new cursor over the word's postings
+	 */
+	public PostingsCursor cursor () {
+		return new PostingsCursor(this);
+	}
+
+	/*
+	 * @return the number of movies whose description contains the word
+	 */
+	public int getDocumentCount () {
+		settle();
+		return docCount;
+	}
+
+	/*
+	 * Returns the set of movies containing the word. It must not be modified.
+	 * @return the movies' ids
+	 */
+	public DocBitmap getDocSet () {
+		settle();
+		return docSet;
+	}
+
+	/*
+	 * @return the total number of locations of the word
+	 */
+	public int getOccurrenceCount () {
+		settle();
+		return positionCount;
+	}
+
+	/*
+	 * @return the number of full blocks
+	 */
+	public int getBlockCount () {
+		settle();
+		return blockCount;
+	}
+
+	/*
+	 * Returns the encoded full blocks. Block b starts where block b - 1 ends (see
+	 * getSkipData()), and holds PForCodec blocks of its movie id gaps minus one (the
+	 * first gap counted from the previous block's last id, or -1) and of its frequencies
+	 * minus one. The array is not copied and must not be modified.
+	 * @return the block array
+	 */
+	public byte[] getBlockData () {
+		settle();
+		return blockData;
+	}
+
+	/*
+	 * Returns the skip data: for block b, skipData[3b] is its last movie id,
+	 * skipData[3b + 1] its end in getBlockData() and skipData[3b + 2] the end of its
+	 * positions in getPositions(). The array is not copied and must not be modified.
+	 * @return the skip data
+	 */
+	public int[] getSkipData () {
+		settle();
+		return skipData;
+	}
+
+	/*
+	 * Returns the movies after the full blocks, as pairs of movie id and frequency. The
+	 * array is not copied and must not be modified.
+	 * @return the tail array
+	 */
+	public int[] getTail () {
+		settle();
+		return tail;
+	}
+
+	/*
+	 * @return the number of movies in getTail()
+	 */
+	public int getTailCount () {
+		settle();
+		return tailCount;
+	}
+
+	/*
+	 * Returns the encoded positions. The array is not copied and must not be modified.
+	 * @return the positions array
+	 */
+	public byte[] getPositions () {
+		settle();
+		return positions;
+	}
+
+	/*
+	 * Inserts a new occurrence of @word.
+	 * @title the movie's title where @word is located.
+	 * @position word's position in the movie's description.
+	 */
+	public void addOccurrence(String title, int position){
+		addOccurrence(documents.idOf(title), position);
+	}
+
+	/*
+	 * Inserts a new ocurrence of @word
+	 * @location where @word occurs
+	 */
+	public void addOccurrence(Location location){
+		addOccurrence(documents.idOf(location.getTitle()), location.getPosition());
+	}
+
+	/*
+	 * Inserts a new occurrence of @word. Occurrences are expected in increasing
+	 * (docId, position) order, as insertMoviesIntoHashTable produces them, and are then
+	 * appended; the tail is encoded as a block once it is full and another movie comes.
+	 * An occurrence out of order is kept pending until the next merge (see the class
+	 * comment); an occurrence already present is ignored.
+	 *
+	 * @param docId id of the movie where @word is located
+	 * @param position word's position in the movie's description, >= 0
+	 */
+	public void addOccurrence ( int docId, int position ) {
+		if ( position < 0 ) {
+			throw new IllegalArgumentException("negative position: " + position);
+		}
+		if ( !append(docId, position) ) {
+			if ( pending == null ) {
+				pending = new long[16];
+			} else if ( pendingCount == pending.length ) {
+				pending = Arrays.copyOf(pending, pendingCount * 2);
+			}
+			if ( pendingCount == 0 || docId < pendingFirst ) {
+				pendingFirst = docId;
+			}
+			pending[pendingCount] = (long) docId << 32 | position;
+			pendingCount++;
+			// merge once the movies to encode again are at most 4 per pending location
+			if ( pendingCount >= PForCodec.BLOCK_SIZE
+					&& 4 * pendingCount >= docCount - PForCodec.BLOCK_SIZE * firstBlock(pendingFirst) ) {
+				settle();
+			}
+		}
+	}
+
+	/*
+	 * Appends (@docId, @position) if it comes after the last location.
+	 * @return false if it does not
+	 */
+	private boolean append ( int docId, int position ) {
+		if ( docId == lastDoc && position > lastPosition ) {
+			writePosition(position - lastPosition);
+			tail[2 * tailCount - 1]++;
+		} else if ( docId > lastDoc ) {
+			if ( tailCount == PForCodec.BLOCK_SIZE ) {
+				flushBlock();
+			}
+			if ( 2 * tailCount == tail.length ) {
+				int[] grown = new int[tail.length * 2];
+				System.arraycopy(tail, 0, grown, 0, tail.length);
+				tail = grown;
+			}
+			tail[2 * tailCount]     = docId;
+			tail[2 * tailCount + 1] = 1;
+			tailCount++;
+			writePosition(position + 1);
+			lastDoc = docId;
+			docCount++;
+			docSet.add(docId);
+		} else {
+			return false;
+		}
+		lastPosition = position;
+		positionCount++;
+		return true;
+	}
+
+	/*
+	 * Encodes the full tail as a block.
+	 */
+	private void flushBlock () {
+		int[] gaps  = new int[PForCodec.BLOCK_SIZE];
+		int[] freqs = new int[PForCodec.BLOCK_SIZE];
+		int previous = blockCount == 0 ? -1 : skipData[3 * blockCount - 3];
+		for ( int i = 0; i < PForCodec.BLOCK_SIZE; i++ ) {
+			gaps[i]  = tail[2 * i] - previous - 1;
+			freqs[i] = tail[2 * i + 1] - 1;
+			previous = tail[2 * i];
+		}
+
+		// encode into a scratch buffer and grow blockData by 1/8 at least, as most words
+		// only ever have a few blocks
+		byte[] encoded = new byte[2 * PForCodec.MAX_BLOCK_BYTES];
+		int length = PForCodec.encode(gaps, encoded, 0);
+		length = PForCodec.encode(freqs, encoded, length);
+		if ( blockLength + length > blockData.length ) {
+			byte[] grown = new byte[Math.max(blockData.length + blockData.length / 8, blockLength + length)];
+			System.arraycopy(blockData, 0, grown, 0, blockLength);
+			blockData = grown;
+		}
+		System.arraycopy(encoded, 0, blockData, blockLength, length);
+		blockLength += length;
+
+		if ( 3 * blockCount == skipData.length ) {
+			int[] grown = new int[Math.max(3, skipData.length * 2)];
+			System.arraycopy(skipData, 0, grown, 0, skipData.length);
+			skipData = grown;
+		}
+		skipData[3 * blockCount]     = previous;
+		skipData[3 * blockCount + 1] = blockLength;
+		skipData[3 * blockCount + 2] = positionLength;
+		blockCount++;
+		tailCount = 0;
+	}
+
+	/*
+	 * Merges the pending locations into the postings, if there are any. Holds the
+	 * monitor, so that readers racing to merge after a concurrent load do it once.
+	 */
+	private void settle () {
+		if ( pendingCount != 0 ) {
+			synchronized ( this ) {
+				if ( pendingCount != 0 && !merging ) {
+					merge();
+				}
+			}
+		}
+	}
+
+	/*
+	 * Merges the sorted pending locations into the postings, dropping the ones already
+	 * present. The full blocks before the first pending movie are kept as they are,
+	 * with their skip data and positions, and only the postings from that block on are
+	 * decoded and encoded again. The DocBitmap is kept too, as the pending movies are
+	 * simply added to it.
+	 */
+	private void merge () {
+		merging = true;
+		int added = pendingCount;
+		Arrays.sort(pending, 0, added);
+
+		int kept = firstBlock(pendingFirst);
+		int from = kept == 0 ? 0 : skipData[3 * kept - 3] + 1;
+
+		long[] merged = new long[docCount - kept * PForCodec.BLOCK_SIZE + added];
+		int n = 0, p = 0, decoded = 0;
+		PostingsCursor cursor = cursor();
+		for ( int doc = cursor.advance(from); doc != PostingsCursor.NO_MORE_DOCS; doc = cursor.nextDoc() ) {
+			if ( n + cursor.freq() + added > merged.length ) {
+				merged = Arrays.copyOf(merged, Math.max(merged.length * 2, n + cursor.freq() + added));
+			}
+			int[] locations = cursor.positions();
+			for ( int i = 0; i < cursor.freq(); i++ ) {
+				long location = (long) doc << 32 | locations[i];
+				while ( p < added && pending[p] < location ) {
+					n = appendDistinct(merged, n, pending[p++]);
+				}
+				merged[n++] = location;
+			}
+			decoded += cursor.freq();
+		}
+		if ( n + added > merged.length ) {
+			merged = Arrays.copyOf(merged, n + added);
+		}
+		while ( p < added ) {
+			n = appendDistinct(merged, n, pending[p++]);
+		}
+
+		blockLength    = kept == 0 ? 0 : skipData[3 * kept - 2];
+		positionLength = kept == 0 ? 0 : skipData[3 * kept - 1];
+		lastDoc        = kept == 0 ? -1 : skipData[3 * kept - 3];
+		lastPosition   = -1;
+		blockCount     = kept;
+		tailCount      = 0;
+		docCount       = kept * PForCodec.BLOCK_SIZE;
+		positionCount -= decoded;
+		for ( int i = 0; i < n; i++ ) {
+			append((int) (merged[i] >>> 32), (int) merged[i]);
+		}
+		pending = null;
+		merging = false;
+		pendingCount = 0;
+	}
+
+	/*
+	 * @return the first full block whose last movie id is >= @docId, or blockCount if
+	 * 		there is none
+	 */
+	private int firstBlock ( int docId ) {
+		int lo = 0, hi = blockCount;
+		while ( lo < hi ) {
+			int mid = (lo + hi) >>> 1;
+			if ( skipData[3 * mid] < docId ) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/*
+	 * Stores @location at @merged[n] unless it equals @merged[n - 1].
+	 * @return the new number of locations in @merged
+	 */
+	private static int appendDistinct ( long[] merged, int n, long location ) {
+		if ( n > 0 && merged[n - 1] == location ) {
+			return n;
+		}
+		merged[n] = location;
+		return n + 1;
+	}
+
+	private void writePosition ( int v ) {
+		if ( positionLength + 5 > positions.length ) {
+			byte[] grown = new byte[Math.max(positions.length * 2, positionLength + 5)];
+			System.arraycopy(positions, 0, grown, 0, positionLength);
+			positions = grown;
+		}
+		while ( (v & ~0x7F) != 0 ) {
+			positions[positionLength++] = (byte) ((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		positions[positionLength++] = (byte) v;
+	}
+
+	/*
+	 * Returns true if @this equals @other
+	 * @other another WordOccurrence object.
+	 * @return true if @this equals @other
+	 */
+	public boolean equals ( Object other ) {
+
+		if ( !(other instanceof WordOccurrence) )
+			return false;
+
+		WordOccurrence o = (WordOccurrence) other;
+		settle();
+		o.settle();
+
+		if ( !word.equals(o.getWord()) )
+			return false;
+
+		if ( docCount != o.docCount || positionCount != o.positionCount )
+			return false;
+
+		PostingsCursor mine = cursor(), theirs = o.cursor();
+		for ( int doc = mine.nextDoc(); doc != PostingsCursor.NO_MORE_DOCS; doc = mine.nextDoc() ) {
+			if ( theirs.nextDoc() != doc || theirs.freq() != mine.freq() )
+				return false;
+			for ( int p = 0; p < mine.freq(); p++ ) {
+				if ( mine.positions()[p] != theirs.positions()[p] )
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Returns the string representation of the WordOccurrence object.
+	 * @return the string representing this object.
+	 */
+	public String toString() {
+
+		settle();
+		StringBuilder ret = new StringBuilder("[" + word + ":");
+
+		PostingsCursor cursor = cursor();
+		int written = 0;
+		for ( int doc = cursor.nextDoc(); doc != PostingsCursor.NO_MORE_DOCS; doc = cursor.nextDoc() ) {
+			String title = documents.getTitle(doc);
+			int[] places = cursor.positions();
+			for ( int p = 0; p < cursor.freq(); p++ ) {
+				ret.append(title).append('(').append(places[p]).append(')');
+				if ( ++written < positionCount ) ret.append(',');
+			}
+		}
+
+		ret.append("]");
+		return ret.toString();
+	}
+}